@@ -1,5 +1,6 @@
 package com.shapesdemo;
 
+import com.shapesdemo.gui.RenderBenchmark;
 import com.shapesdemo.gui.ShapesFrame;
 import javax.swing.*;
 
@@ -7,9 +8,18 @@ public class Main {
     public static void main(String[] args) {
         if (args.length < 1) {
             System.out.println("Usage: java -jar shapes-demo.jar [server|client] [host] [port]");
+            System.out.println("       java -jar shapes-demo.jar benchmark [shapes] [frames]");
             System.exit(1);
         }
 
+        // 无界面渲染基准，不启动窗口
+        if (args[0].equalsIgnoreCase("benchmark")) {
+            int shapes = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+            int frames = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+            RenderBenchmark.run(shapes, frames);
+            return;
+        }
+
         boolean isServer = args[0].equalsIgnoreCase("server");
         String host = isServer ? "localhost" : (args.length > 1 ? args[1] : "localhost");
         int port = args.length > 2 ? Integer.parseInt(args[2]) : 12345;
@@ -0,0 +1,115 @@
+package com.shapesdemo.gui;
+
+import com.shapesdemo.shape.Circle;
+import com.shapesdemo.shape.Rectangle;
+import com.shapesdemo.shape.Shape;
+import com.shapesdemo.shape.Triangle;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// 无界面的渲染基准：把同一场景分别顺序绘制和分块并行绘制到BufferedImage，报告每帧耗时。
+// 分块渲染依次使用1到CPU核数个线程；"移动"为每帧所有图形都移动，"静止"为场景不变（分块可复用）
+public final class RenderBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 800;
+    private static final int WARMUP_FRAMES = 20;
+    private static final int MAX_STEP = 8;  // 每帧每个图形在每个方向上移动的最大距离
+    private static final long SEED = 42;    // 固定随机种子，各次运行的场景和移动完全相同
+
+    private RenderBenchmark() {
+    }
+
+    public static void run(int shapeCount, int frames) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d shapes, %dx%d, %d frames, %d cores%n", shapeCount, WIDTH, HEIGHT, frames, cores);
+        System.out.printf("%-12s %12s %12s%n", "renderer", "moving ms", "static ms");
+
+        Painter sequential = (shapes, g2d) -> ShapesPanel.paintShapes(g2d, shapes, null);
+        report("sequential", sequential, shapeCount, frames);
+
+        for (int threads = 1; threads <= cores; threads++) {
+            TileRenderer renderer = new TileRenderer(threads);
+            try {
+                Painter tiled = (shapes, g2d) -> {
+                    renderer.render(shapes, null, WIDTH, HEIGHT, 1, 1);
+                    renderer.composite(g2d);
+                };
+                report("tiled x" + threads, tiled, shapeCount, frames);
+            } finally {
+                renderer.shutdown();
+            }
+        }
+    }
+
+    private static void report(String name, Painter painter, int shapeCount, int frames) {
+        double moving = measure(painter, shapeCount, frames, true);
+        double still = measure(painter, shapeCount, frames, false);
+        System.out.printf("%-12s %12.2f %12.2f%n", name, moving, still);
+    }
+
+    // 返回平均每帧耗时（毫秒），包括清空画布和拼合分块
+    private static double measure(Painter painter, int shapeCount, int frames, boolean moving) {
+        Random random = new Random(SEED);
+        List<Shape> shapes = createScene(shapeCount, random);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        long start = 0;
+        for (int frame = -WARMUP_FRAMES; frame < frames; frame++) {
+            if (frame == 0) {
+                start = System.nanoTime();
+            }
+            if (moving) {
+                for (Shape shape : shapes) {
+                    step(shape, random);
+                }
+            }
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setColor(Color.WHITE);
+                g2d.fillRect(0, 0, WIDTH, HEIGHT);
+                painter.paint(shapes, g2d);
+            } finally {
+                g2d.dispose();
+            }
+        }
+        return (System.nanoTime() - start) / 1e6 / Math.max(1, frames);
+    }
+
+    private static List<Shape> createScene(int shapeCount, Random random) {
+        List<Shape> shapes = new ArrayList<>(shapeCount);
+        for (int i = 0; i < shapeCount; i++) {
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            Color color = new Color(random.nextInt(0xFFFFFF));
+            int size = 20 + random.nextInt(40);
+            Shape shape;
+            switch (i % 3) {
+                case 0: shape = new Circle(x, y, color, size); break;
+                case 1: shape = new Rectangle(x, y, color, size); break;
+                default: shape = new Triangle(x, y, color, size); break;
+            }
+            shape.setShowTrail(true);
+            // 预先走若干步，让轨迹达到稳定长度
+            for (int s = 0; s < 60; s++) {
+                step(shape, random);
+            }
+            shapes.add(shape);
+        }
+        return shapes;
+    }
+
+    private static void step(Shape shape, Random random) {
+        int x = Math.max(0, Math.min(WIDTH - 1, shape.getX() + random.nextInt(MAX_STEP * 2 + 1) - MAX_STEP));
+        int y = Math.max(0, Math.min(HEIGHT - 1, shape.getY() + random.nextInt(MAX_STEP * 2 + 1) - MAX_STEP));
+        shape.setPosition(x, y);
+        shape.setX(x); // 记录轨迹点
+    }
+
+    private interface Painter {
+        void paint(List<Shape> shapes, Graphics2D g2d);
+    }
+}
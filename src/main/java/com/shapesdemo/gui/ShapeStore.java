@@ -0,0 +1,119 @@
+package com.shapesdemo.gui;
+
+import com.shapesdemo.shape.Shape;
+import com.shapesdemo.util.IntObjectMap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+// 面板的图形存储：按绘制顺序（z序）排列的双向链表，加上按句柄和按待确认id的索引，
+// 追加、查找和删除都是O(1)。只在EDT上访问
+class ShapeStore implements Iterable<Shape> {
+    private final IntObjectMap<Node> byHandle = new IntObjectMap<>();
+    // 本地创建、等待服务器分配句柄的图形，只在绑定时按id查找一次
+    private final Map<String, Node> pendingById = new HashMap<>();
+    private Node head;
+    private Node tail;
+    private int size;
+
+    void add(Shape shape) {
+        Node node = new Node(shape);
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+            node.prev = tail;
+        }
+        tail = node;
+        size++;
+        if (shape.getHandle() != Shape.NO_HANDLE) {
+            byHandle.put(shape.getHandle(), node);
+        } else {
+            pendingById.put(shape.getId(), node);
+        }
+    }
+
+    // 为等待中的图形绑定句柄，返回被绑定的图形；不存在时返回null
+    Shape bindHandle(String id, int handle) {
+        Node node = pendingById.remove(id);
+        if (node == null) {
+            return null;
+        }
+        node.shape.setHandle(handle);
+        byHandle.put(handle, node);
+        return node.shape;
+    }
+
+    Shape get(int handle) {
+        Node node = byHandle.get(handle);
+        return node != null ? node.shape : null;
+    }
+
+    Shape remove(int handle) {
+        Node node = byHandle.remove(handle);
+        if (node == null) {
+            return null;
+        }
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tail = node.prev;
+        }
+        size--;
+        return node.shape;
+    }
+
+    // 从最上层开始查找第一个满足条件的图形
+    Shape findTopmost(Predicate<Shape> predicate) {
+        for (Node node = tail; node != null; node = node.prev) {
+            if (predicate.test(node.shape)) {
+                return node.shape;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Shape> iterator() {
+        return new Iterator<Shape>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Shape next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Shape shape = next.shape;
+                next = next.next;
+                return shape;
+            }
+        };
+    }
+
+    private static class Node {
+        final Shape shape;
+        Node prev;
+        Node next;
+
+        Node(Shape shape) {
+            this.shape = shape;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.shapesdemo.gui;
 
+import com.shapesdemo.network.CountingInputStream;
+import com.shapesdemo.network.LeaseTable;
+import com.shapesdemo.network.PacedSender;
 import com.shapesdemo.network.ShapeMessage;
+import com.shapesdemo.network.TrailCodec;
 import com.shapesdemo.shape.*;
 import com.shapesdemo.shape.Rectangle;
 import com.shapesdemo.shape.Shape;
@@ -11,33 +15,48 @@ import java.io.*;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShapesFrame extends JFrame {
     private ShapesPanel shapesPanel;
     private JPanel controlPanel;
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private CountingInputStream countingIn;
     private boolean isServer;
     private ServerSocket serverSocket;
     private Shape selectedShape;
     private List<ClientHandler> clients;
-    private final String clientId;
+    private volatile int peerHandle = Shape.NO_HANDLE; // 本端句柄，客户端在连接后由服务器分配
+    private final AtomicInteger nextPeerHandle = new AtomicInteger(SERVER_PEER_HANDLE + 1);
+    private final AtomicInteger nextShapeHandle = new AtomicInteger(1);
+    private static final int SERVER_PEER_HANDLE = 1;
     private JLabel delayLabel;
     private static final String DELAY_FORMAT = "同步延迟: %d ms";
+    private static final long HEARTBEAT_INTERVAL_MS = 1000; // 客户端续约间隔
+    private static final long LEASE_DURATION_MS = 5000;     // 未续约超过此时间，所有者的图形被删除
+    private static final long LEASE_SWEEP_INTERVAL_MS = 1000;
+    private final LeaseTable leases = new LeaseTable(LEASE_DURATION_MS);
+    private ScheduledExecutorService leaseSweeper;
 
     public ShapesFrame(boolean isServer, String host, int port) {
         this.isServer = isServer;
         this.clients = new CopyOnWriteArrayList<>();
-        this.clientId = UUID.randomUUID().toString();
+        if (isServer) {
+            this.peerHandle = SERVER_PEER_HANDLE;
+        }
         
         setTitle(isServer ? "Shapes Demo - Server" : "Shapes Demo - Client");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         
         // Initialize components
         shapesPanel = new ShapesPanel();
+        shapesPanel.setRemoveListener(this::removeShape);
         controlPanel = createControlPanel();
         
         // 添加延迟显示标签
@@ -70,6 +89,9 @@ public class ShapesFrame extends JFrame {
     private void cleanup() {
         try {
             if (isServer) {
+                if (leaseSweeper != null) {
+                    leaseSweeper.shutdownNow();
+                }
                 for (ClientHandler client : clients) {
                     client.close();
                 }
@@ -104,8 +126,12 @@ public class ShapesFrame extends JFrame {
 
         // Trail toggle
         JCheckBox trailCheck = new JCheckBox("显示轨迹");
+        JSpinner toleranceSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 10, 1));
         JButton clearTrailBtn = new JButton("清除轨迹");
 
+        // Rendering mode
+        JCheckBox tiledRenderCheck = new JCheckBox("分块并行渲染");
+
         // Add shape button
         JButton addBtn = new JButton("添加形状");
 
@@ -124,6 +150,9 @@ public class ShapesFrame extends JFrame {
             }
         });
 
+        tiledRenderCheck.addActionListener(e ->
+                shapesPanel.setTiledRendering(tiledRenderCheck.isSelected()));
+
         clearTrailBtn.addActionListener(e -> {
             shapesPanel.clearAllTrails();
             // 通知其他客户端清除轨迹
@@ -145,7 +174,12 @@ public class ShapesFrame extends JFrame {
                     break;
             }
             if (shape != null) {
+                shape.setTrailTolerance((Integer) toleranceSpinner.getValue());
                 shape.setShowTrail(trailCheck.isSelected());
+                shape.setOwnerHandle(peerHandle);
+                if (isServer) {
+                    shape.setHandle(nextShapeHandle.getAndIncrement());
+                }
                 shapesPanel.addShape(shape);
                 sendShape(shape, "ADD");
             }
@@ -161,7 +195,11 @@ public class ShapesFrame extends JFrame {
         panel.add(sizeSpinner);
         panel.add(Box.createVerticalStrut(10));
         panel.add(trailCheck);
+        panel.add(new JLabel("轨迹简化容差(像素):"));
+        panel.add(toleranceSpinner);
         panel.add(clearTrailBtn);
+        panel.add(Box.createVerticalStrut(10));
+        panel.add(tiledRenderCheck);
         panel.add(Box.createVerticalStrut(20));
         panel.add(addBtn);
 
@@ -187,6 +225,15 @@ public class ShapesFrame extends JFrame {
                         }
                     }
                 }).start();
+
+                // 定期清理租约过期的图形，在独立线程上进行，不影响转发
+                leaseSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "lease-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                leaseSweeper.scheduleWithFixedDelay(this::expireOrphanedShapes,
+                        LEASE_SWEEP_INTERVAL_MS, LEASE_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
             } else {
                 socket = new Socket(host, port);
                 setupStreams();
@@ -197,41 +244,117 @@ public class ShapesFrame extends JFrame {
     }
 
     private void setupStreams() throws IOException {
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        countingIn = new CountingInputStream(socket.getInputStream());
+        in = new DataInputStream(new BufferedInputStream(countingIn));
 
         // Setup shape update listener
         shapesPanel.setUpdateListener(shape -> sendShape(shape, "UPDATE"));
 
         // Start receiving messages
         new Thread(this::receiveMessages).start();
+
+        // 定期发送心跳以续约本端创建的图形
+        Thread heartbeat = new Thread(() -> {
+            try {
+                while (!socket.isClosed()) {
+                    Thread.sleep(HEARTBEAT_INTERVAL_MS);
+                    writeToServer(new ShapeMessage(null, "HEARTBEAT", peerHandle));
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    e.printStackTrace();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    // 只有创建者可以删除图形，且图形必须已分配句柄
+    private void removeShape(Shape shape) {
+        if (shape.getHandle() == Shape.NO_HANDLE || shape.getOwnerHandle() != peerHandle) {
+            return;
+        }
+        int[] handles = {shape.getHandle()};
+        shapesPanel.removeShapes(handles);
+        ShapeMessage message = ShapeMessage.remove(handles, peerHandle);
+        try {
+            if (isServer) {
+                for (ClientHandler client : clients) {
+                    client.sendMessage(message);
+                }
+            } else if (out != null) {
+                writeToServer(message);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 删除租约过期的所有者的图形，分批广播REMOVE
+    private void expireOrphanedShapes() {
+        int[] orphaned = leases.expire(System.currentTimeMillis());
+        for (ShapeMessage message : ShapeMessage.removeBatches(orphaned, SERVER_PEER_HANDLE)) {
+            handleMessage(message);
+            for (ClientHandler client : clients) {
+                client.sendMessage(message);
+            }
+        }
     }
 
     private void sendShape(Shape shape, String action) {
+        ShapeMessage message;
+        if ("UPDATE".equals(action)) {
+            // 句柄尚未分配时无法寻址，等待服务器确认ADD后再同步
+            if (shape.getHandle() == Shape.NO_HANDLE) {
+                return;
+            }
+            message = ShapeMessage.update(shape, peerHandle);
+        } else {
+            if ("ADD".equals(action)) {
+                // ADD已携带完整轨迹，之后的UPDATE只需发送新增部分
+                shape.setSyncedTrailCount(shape.getTrailCount());
+            }
+            message = new ShapeMessage(shape, action, peerHandle);
+        }
         try {
             if (isServer) {
                 // 服务器向所有客户端广播
-                ShapeMessage message = new ShapeMessage(shape, action, clientId);
                 for (ClientHandler client : clients) {
                     client.sendMessage(message);
                 }
             } else if (out != null) {
                 // 客户端发送到服务器
-                out.writeObject(new ShapeMessage(shape, action, clientId));
-                out.reset();
-                out.flush();
+                writeToServer(message);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // EDT和接收线程都会向服务器写消息
+    private synchronized void writeToServer(ShapeMessage message) throws IOException {
+        message.writeTo(out);
+        out.flush();
+    }
+
     private void receiveMessages() {
         while (socket != null && !socket.isClosed()) {
             try {
-                ShapeMessage message = (ShapeMessage) in.readObject();
+                ShapeMessage message = ShapeMessage.readFrom(in);
+                if ("PING".equals(message.getAction())) {
+                    // 立即回应，附带已收到的字节数，供服务器估算往返时延和吞吐量
+                    ShapeMessage pong = new ShapeMessage(null, "PONG", peerHandle);
+                    pong.setTimestamp(message.getTimestamp());
+                    pong.setReceivedBytes(countingIn.getCount());
+                    writeToServer(pong);
+                    continue;
+                }
                 handleMessage(message);
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 if (!socket.isClosed()) {
                     e.printStackTrace();
                 }
@@ -245,21 +368,37 @@ public class ShapesFrame extends JFrame {
             try {
                 // 计算延迟（只对UPDATE消息计算）
                 if ("UPDATE".equals(message.getAction()) && 
-                    !clientId.equals(message.getSenderId())) {
+                    message.getSenderHandle() != peerHandle) {
                     long delay = System.currentTimeMillis() - message.getTimestamp();
                     updateDelayLabel(delay);
                 }
 
                 Shape receivedShape = message.getShape();
                 switch (message.getAction()) {
+                    case "ASSIGN_PEER":
+                        peerHandle = message.getSenderHandle();
+                        break;
                     case "ADD":
                         if (receivedShape != null) {
-                            shapesPanel.addShape(receivedShape);
+                            // 自己创建的图形只需绑定句柄，并补发等待期间的移动
+                            Shape localShape = shapesPanel.bindHandle(receivedShape);
+                            if (localShape != null) {
+                                sendShape(localShape, "UPDATE");
+                            } else {
+                                shapesPanel.addShape(receivedShape);
+                            }
                         }
                         break;
                     case "UPDATE":
-                        if (receivedShape != null) {
-                            shapesPanel.updateShape(receivedShape);
+                        byte[] trailDelta = message.getTrailDelta();
+                        shapesPanel.updateShape(message.getShapeHandle(), message.getX(), message.getY(),
+                                message.isShowTrail(), message.getTrailGeneration(),
+                                message.getTrailBase(), message.getTrailEnd(),
+                                trailDelta != null ? TrailCodec.decode(trailDelta) : null);
+                        break;
+                    case "REMOVE":
+                        if (message.getShapeHandles() != null) {
+                            shapesPanel.removeShapes(message.getShapeHandles());
                         }
                         break;
                     case "CLEAR_TRAILS":
@@ -285,31 +424,63 @@ public class ShapesFrame extends JFrame {
     }
 
     // 内部类：处理客户端连接
+    // 接收在run()所在线程进行；发送由独立线程上的PacedSender按连接状况调整节奏和细节等级
     private class ClientHandler implements Runnable {
         private Socket clientSocket;
-        private ObjectOutputStream clientOut;
-        private ObjectInputStream clientIn;
+        private final PacedSender sender;
+        private DataInputStream clientIn;
+        private final int handle;
 
         public ClientHandler(Socket socket) throws IOException {
             this.clientSocket = socket;
-            this.clientOut = new ObjectOutputStream(socket.getOutputStream());
-            this.clientIn = new ObjectInputStream(socket.getInputStream());
+            this.sender = new PacedSender(socket, SERVER_PEER_HANDLE);
+            this.clientIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.handle = nextPeerHandle.getAndIncrement();
+            leases.renew(handle, System.currentTimeMillis());
+            // 连接时告知客户端其句柄
+            sendMessage(new ShapeMessage(null, "ASSIGN_PEER", handle));
         }
 
         @Override
         public void run() {
+            new Thread(sender).start();
             while (!clientSocket.isClosed()) {
                 try {
-                    ShapeMessage message = (ShapeMessage) clientIn.readObject();
+                    ShapeMessage message = ShapeMessage.readFrom(clientIn);
+                    long now = System.currentTimeMillis();
+                    // 收到任何消息都视为续约
+                    leases.renew(handle, now);
+                    if ("PONG".equals(message.getAction())) {
+                        sender.onPong(message, now);
+                        continue;
+                    }
+                    if ("HEARTBEAT".equals(message.getAction())) {
+                        continue;
+                    }
+                    if ("REMOVE".equals(message.getAction())) {
+                        message = authorizeRemove(message);
+                        if (message == null) {
+                            continue;
+                        }
+                    }
+                    boolean isAdd = "ADD".equals(message.getAction()) && message.getShape() != null;
+                    if (isAdd) {
+                        // 为新图形分配句柄，广播时一并公布id与句柄的映射；所有者以连接为准
+                        Shape shape = message.getShape();
+                        shape.setHandle(nextShapeHandle.getAndIncrement());
+                        shape.setOwnerHandle(handle);
+                        message.setShapeHandle(shape.getHandle());
+                        leases.grant(handle, shape.getHandle(), now);
+                    }
                     // 处理从客户端收到的消息
                     handleMessage(message);
-                    // 转发给其他客户端
+                    // 转发给其他客户端；ADD同时回送给创建者以确认句柄
                     for (ClientHandler client : clients) {
-                        if (client != this) {
+                        if (client != this || isAdd) {
                             client.sendMessage(message);
                         }
                     }
-                } catch (IOException | ClassNotFoundException e) {
+                } catch (IOException e) {
                     if (!clientSocket.isClosed()) {
                         e.printStackTrace();
                     }
@@ -317,14 +488,26 @@ public class ShapesFrame extends JFrame {
                 }
             }
             clients.remove(this);
+            // 断开后租约立即失效，其图形在下一次清理时删除
+            leases.revoke(handle);
+            close();
         }
 
-        public void sendMessage(ShapeMessage message) throws IOException {
-            if (!clientSocket.isClosed()) {
-                clientOut.writeObject(message);
-                clientOut.reset();
-                clientOut.flush();
+        // 只保留确实属于该客户端的句柄，全部无效时返回null
+        private ShapeMessage authorizeRemove(ShapeMessage message) {
+            int[] requested = message.getShapeHandles();
+            if (requested == null) {
+                return null;
             }
+            int[] owned = leases.releaseAll(handle, requested);
+            if (owned.length == 0) {
+                return null;
+            }
+            return owned == requested ? message : ShapeMessage.remove(owned, handle);
+        }
+
+        public void sendMessage(ShapeMessage message) {
+            sender.offer(message);
         }
 
         public void close() {
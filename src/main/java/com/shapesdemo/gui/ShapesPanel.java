@@ -6,18 +6,20 @@ import com.shapesdemo.shape.Shape;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ShapesPanel extends JPanel {
-    private final List<Shape> shapes = new CopyOnWriteArrayList<>();
+    private final ShapeStore shapes = new ShapeStore();
     private Shape selectedShape;
     private ShapeUpdateListener updateListener;
+    private ShapeRemoveListener removeListener;
     private Timer updateTimer;
     private Timer animationTimer;
     private static final int UPDATE_INTERVAL = 16; // 约60FPS
     private static final int ANIMATION_INTERVAL = 16;
     private Point lastMousePoint;
+    private TileRenderer tileRenderer; // 非null时使用分块并行渲染
 
     public ShapesPanel() {
         setPreferredSize(new Dimension(800, 600));
@@ -27,6 +29,14 @@ public class ShapesPanel extends JPanel {
         MouseAdapter mouseHandler = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
+                // 右键删除图形
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    Shape shape = shapes.findTopmost(s -> isPointInShape(e.getX(), e.getY(), s));
+                    if (shape != null && removeListener != null) {
+                        removeListener.onShapeRemoved(shape);
+                    }
+                    return;
+                }
                 selectShapeAt(e.getX(), e.getY());
                 lastMousePoint = e.getPoint();
             }
@@ -75,15 +85,7 @@ public class ShapesPanel extends JPanel {
     }
 
     private void selectShapeAt(int x, int y) {
-        Shape selected = null;
-        for (int i = shapes.size() - 1; i >= 0; i--) {
-            Shape shape = shapes.get(i);
-            if (isPointInShape(x, y, shape)) {
-                selected = shape;
-                break;
-            }
-        }
-        selectedShape = selected;
+        selectedShape = shapes.findTopmost(shape -> isPointInShape(x, y, shape));
         repaint();
     }
 
@@ -96,8 +98,19 @@ public class ShapesPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        
+        AffineTransform transform = ((Graphics2D) g).getTransform();
+        if (tileRenderer != null && TileRenderer.supports(transform)) {
+            // 按设备缩放渲染分块，HiDPI屏幕上不会被放大而模糊
+            tileRenderer.render(shapes, selectedShape, getWidth(), getHeight(),
+                    transform.getScaleX(), transform.getScaleY());
+            tileRenderer.composite(g);
+            return;
+        }
+        paintShapes((Graphics2D) g, shapes, selectedShape);
+    }
+
+    // 顺序绘制：先按列表顺序绘制全部轨迹，再按列表顺序绘制全部图形。分块渲染的每个分块也用它绘制
+    static void paintShapes(Graphics2D g2d, Iterable<Shape> shapes, Shape selectedShape) {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                             RenderingHints.VALUE_ANTIALIAS_ON);
 
@@ -110,41 +123,67 @@ public class ShapesPanel extends JPanel {
         for (Shape shape : shapes) {
             shape.draw(g2d);
             if (shape == selectedShape) {
-                g2d.setColor(Color.RED);
-                g2d.setStroke(new BasicStroke(2));
-                int size = shape.getSize();
-                g2d.drawRect(shape.getX() - size/2, 
-                            shape.getY() - size/2, 
-                            size, size);
+                drawSelection(g2d, shape);
             }
         }
     }
 
+    static void drawSelection(Graphics2D g2d, Shape shape) {
+        g2d.setColor(Color.RED);
+        g2d.setStroke(new BasicStroke(2));
+        int size = shape.getSize();
+        g2d.drawRect(shape.getX() - size/2, 
+                    shape.getY() - size/2, 
+                    size, size);
+    }
+
+    public void setTiledRendering(boolean enabled) {
+        if (enabled && tileRenderer == null) {
+            tileRenderer = new TileRenderer(Runtime.getRuntime().availableProcessors());
+        } else if (!enabled && tileRenderer != null) {
+            tileRenderer.shutdown();
+            tileRenderer = null;
+        }
+        repaint();
+    }
+
     public void addShape(Shape shape) {
         shapes.add(shape);
         repaint();
     }
 
-    public void updateShape(Shape updatedShape) {
-        for (int i = 0; i < shapes.size(); i++) {
-            Shape shape = shapes.get(i);
-            if (shape.equals(updatedShape)) {
-                // 直接更新位置和状态
-                shape.setX(updatedShape.getX());
-                shape.setY(updatedShape.getY());
-                shape.setTargetX(updatedShape.getX());
-                shape.setTargetY(updatedShape.getY());
-                shape.setShowTrail(updatedShape.isShowTrail());
-                
-                // 更新轨迹
-                if (updatedShape.isShowTrail()) {
-                    shape.setTrailPoints(updatedShape.getTrailPoints());
-                }
-                
-                if (selectedShape != null && selectedShape.equals(shape)) {
-                    selectedShape = shape;
-                }
-                break;
+    // 将服务器公布的句柄绑定到本地等待中的图形，返回被绑定的本地图形；
+    // 如果该图形不是本地创建的则返回null
+    public Shape bindHandle(Shape announcedShape) {
+        Shape shape = shapes.bindHandle(announcedShape.getId(), announcedShape.getHandle());
+        if (shape != null) {
+            shape.setOwnerHandle(announcedShape.getOwnerHandle());
+        }
+        return shape;
+    }
+
+    public void removeShapes(int[] handles) {
+        for (int handle : handles) {
+            Shape shape = shapes.remove(handle);
+            if (shape != null && shape == selectedShape) {
+                selectedShape = null;
+            }
+        }
+        repaint();
+    }
+
+    // appendedTrail为发送方第trailGeneration代轨迹中自trailBase序号起新增的点，可以为null
+    public void updateShape(int handle, int x, int y, boolean showTrail,
+                            int trailGeneration, int trailBase, int trailEnd, List<Point> appendedTrail) {
+        Shape shape = shapes.get(handle);
+        if (shape != null) {
+            // 直接更新位置和状态，轨迹只由发送方的增量决定
+            shape.setPosition(x, y);
+            shape.setShowTrail(showTrail);
+
+            // 追加新增的轨迹点
+            if (showTrail && appendedTrail != null) {
+                shape.appendTrailPoints(trailGeneration, trailBase, trailEnd, appendedTrail);
             }
         }
         repaint();
@@ -161,15 +200,24 @@ public class ShapesPanel extends JPanel {
         this.updateListener = listener;
     }
 
+    public void setRemoveListener(ShapeRemoveListener listener) {
+        this.removeListener = listener;
+    }
+
     @Override
     public void removeNotify() {
         super.removeNotify();
         if (updateTimer != null) {
             updateTimer.stop();
         }
+        setTiledRendering(false);
     }
 
     public interface ShapeUpdateListener {
         void onShapeUpdated(Shape shape);
     }
+
+    public interface ShapeRemoveListener {
+        void onShapeRemoved(Shape shape);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,201 @@
+package com.shapesdemo.gui;
+
+import com.shapesdemo.shape.Shape;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// 分块并行渲染：把画布切成固定大小的分块，每个分块在线程池中独立绘制到自己的图像，
+// 内容未变化的分块直接复用上一帧的图像，最后在EDT上拼合。
+// 只依赖BufferedImage，无界面环境下同样可用。HiDPI屏幕上分块图像按设备像素分配和绘制，
+// 拼合时抵消缩放，输出与直接绘制同样清晰
+class TileRenderer {
+    static final int TILE_SIZE = 128;
+
+    private final ExecutorService pool;
+    private Tile[] tiles = new Tile[0];
+    private int columns;
+    private int rows;
+    private int width;
+    private int height;
+    private double scaleX = 1;
+    private double scaleY = 1;
+
+    TileRenderer(int threads) {
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "tile-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 绘制一帧，返回时所有分块都已完成；每个分块按ShapesPanel.paintShapes的顺序绘制。
+    // width和height为逻辑尺寸，scaleX和scaleY为目标Graphics的设备缩放（普通屏幕为1）
+    void render(Iterable<Shape> shapes, Shape selectedShape, int width, int height,
+                double scaleX, double scaleY) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (width != this.width || height != this.height
+                || scaleX != this.scaleX || scaleY != this.scaleY) {
+            layoutTiles(width, height, scaleX, scaleY);
+        }
+
+        for (Tile tile : tiles) {
+            tile.shapes.clear();
+            tile.nextSignature = 17;
+        }
+
+        // 按图形的绘制范围分配到相交的分块，保持列表顺序
+        for (Shape shape : shapes) {
+            Rectangle bounds = shape.getPaintBounds();
+            if (bounds.x + bounds.width < 0 || bounds.y + bounds.height < 0) {
+                continue;
+            }
+            int firstColumn = Math.max(0, bounds.x / TILE_SIZE);
+            int lastColumn = Math.min(columns - 1, (bounds.x + bounds.width) / TILE_SIZE);
+            int firstRow = Math.max(0, bounds.y / TILE_SIZE);
+            int lastRow = Math.min(rows - 1, (bounds.y + bounds.height) / TILE_SIZE);
+            long shapeSignature = signatureOf(shape, bounds, shape == selectedShape);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Tile tile = tiles[row * columns + column];
+                    tile.shapes.add(shape);
+                    tile.nextSignature = tile.nextSignature * 31 + shapeSignature;
+                }
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Tile tile : tiles) {
+            if (!tile.valid || tile.signature != tile.nextSignature) {
+                tasks.add(() -> {
+                    tile.draw(selectedShape);
+                    return null;
+                });
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 分块图像已经是设备像素，抵消g中的缩放后按设备坐标原样拼合，不做插值
+    void composite(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g.create();
+        try {
+            g2d.scale(1 / scaleX, 1 / scaleY);
+            for (Tile tile : tiles) {
+                if (tile.valid) {
+                    g2d.drawImage(tile.image, tile.deviceX, tile.deviceY, null);
+                }
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    // 分块图像只能表示平移和缩放，旋转或错切（如打印）时调用方应直接绘制
+    static boolean supports(AffineTransform transform) {
+        return transform.getShearX() == 0 && transform.getShearY() == 0
+                && transform.getScaleX() > 0 && transform.getScaleY() > 0;
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void layoutTiles(int width, int height, double scaleX, double scaleY) {
+        this.width = width;
+        this.height = height;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new Tile[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int x = column * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                // 相邻分块共用取整后的设备边界，缩放为小数时也不重叠、不留缝
+                int deviceX = (int) Math.round(x * scaleX);
+                int deviceY = (int) Math.round(y * scaleY);
+                int deviceRight = (int) Math.round(Math.min(x + TILE_SIZE, width) * scaleX);
+                int deviceBottom = (int) Math.round(Math.min(y + TILE_SIZE, height) * scaleY);
+                tiles[row * columns + column] = new Tile(deviceX, deviceY,
+                        Math.max(1, deviceRight - deviceX), Math.max(1, deviceBottom - deviceY),
+                        scaleX, scaleY);
+            }
+        }
+    }
+
+    // 影响图形外观的状态摘要，用于判断分块是否需要重绘
+    private static long signatureOf(Shape shape, Rectangle bounds, boolean selected) {
+        long h = System.identityHashCode(shape);
+        h = h * 31 + shape.getX();
+        h = h * 31 + shape.getY();
+        h = h * 31 + shape.getSize();
+        h = h * 31 + shape.getColor().getRGB();
+        h = h * 31 + (shape.isShowTrail() ? 1 : 0);
+        h = h * 31 + shape.getTrailCount();
+        h = h * 31 + bounds.x;
+        h = h * 31 + bounds.y;
+        h = h * 31 + bounds.width;
+        h = h * 31 + bounds.height;
+        h = h * 31 + (selected ? 1 : 0);
+        return h;
+    }
+
+    private static class Tile {
+        final int deviceX;  // 分块在设备像素中的位置
+        final int deviceY;
+        final double scaleX;
+        final double scaleY;
+        final BufferedImage image;
+        final List<Shape> shapes = new ArrayList<>();
+        long signature;
+        long nextSignature;
+        boolean valid;
+
+        Tile(int deviceX, int deviceY, int deviceWidth, int deviceHeight, double scaleX, double scaleY) {
+            this.deviceX = deviceX;
+            this.deviceY = deviceY;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.image = new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+
+        void draw(Shape selectedShape) {
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setComposite(AlphaComposite.Clear);
+                g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+                g2d.setComposite(AlphaComposite.SrcOver);
+                g2d.translate(-deviceX, -deviceY);
+                g2d.scale(scaleX, scaleY);
+                ShapesPanel.paintShapes(g2d, shapes, selectedShape);
+            } finally {
+                g2d.dispose();
+            }
+            signature = nextSignature;
+            valid = true;
+        }
+    }
+}
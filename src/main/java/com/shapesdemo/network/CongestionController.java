@@ -0,0 +1,113 @@
+package com.shapesdemo.network;
+
+// 单个连接的拥塞控制：根据PING/PONG测得的往返时延和客户端实际收到的字节数调整发送间隔，
+// 再比较每个间隔排队的字节数与链路在该间隔内能交付的字节数（字节预算），决定细节等级
+public class CongestionController {
+    public enum DetailLevel {
+        FULL,     // 不合并，逐条转发
+        THINNED,  // 合并同一图形的中间位置，轨迹增量拼接后全部保留
+        MINIMAL   // 排队字节超出预算：轨迹增量推迟拼接、降低频率并稀疏后发送
+    }
+
+    static final int BASE_INTERVAL_MS = 16;     // 开始限速时的发送间隔（约60FPS）
+    static final int MAX_INTERVAL_MS = 500;
+    // 排队字节超出预算此比例才进入MINIMAL，留出余量避免来回切换
+    static final double MINIMAL_OVERLOAD_RATIO = 1.25;
+    private static final long RTT_SLACK_MS = 50;
+    private static final long MIN_BACKLOG_BYTES = 64 * 1024;
+    static final int MAX_QUEUED_MESSAGES = 64;  // 单次取出超过此数量说明发送跟不上
+    static final long MAX_WRITE_BLOCK_MS = BASE_INTERVAL_MS * 2; // 写入阻塞超过此时间说明对端接收缓冲已满
+
+    private double smoothedRtt = -1;       // 平滑往返时延（毫秒）
+    private long minRtt = Long.MAX_VALUE;
+    private double deliveryRate;           // 平滑的交付速率（字节/毫秒）
+    // 估算的链路容量（字节/毫秒）。链路未饱和时交付速率只反映实际负载，只能用来调高估算；
+    // 拥塞时交付速率即链路容量，直接取代估算。否则降为MINIMAL后负载变小，会一直卡在MINIMAL
+    private double linkCapacity;
+    private long lastReceivedBytes;
+    private long lastPongTime;
+    private double queuedRate;             // 平滑的排队速率（字节/毫秒），按未稀疏的消息计算
+    private long lastBatchTime;
+    // 0表示不限速；新连接先按基础间隔发送，确认链路通畅后再放开，避免一开始就塞满缓冲区
+    private volatile int sendInterval = BASE_INTERVAL_MS;
+
+    // pingTimestamp为服务器发送PING时的时间，receivedBytes为客户端回报的累计接收字节数，
+    // sentBytes为服务器当前累计发送字节数
+    public synchronized void onPong(long pingTimestamp, long now, long receivedBytes, long sentBytes) {
+        long rtt = Math.max(0, now - pingTimestamp);
+        smoothedRtt = smoothedRtt < 0 ? rtt : smoothedRtt * 0.875 + rtt * 0.125;
+        minRtt = Math.min(minRtt, rtt);
+
+        double sample = -1;
+        if (lastPongTime > 0 && now > lastPongTime) {
+            sample = (double) (receivedBytes - lastReceivedBytes) / (now - lastPongTime);
+            deliveryRate = deliveryRate == 0 ? sample : deliveryRate * 0.75 + sample * 0.25;
+        }
+        lastPongTime = now;
+        lastReceivedBytes = receivedBytes;
+
+        // 本次往返的排队时延明显增加，或在途数据超过约两倍带宽时延积，都视为拥塞
+        long inFlight = sentBytes - receivedBytes;
+        boolean congested = rtt > minRtt * 2 + RTT_SLACK_MS
+                || inFlight > Math.max(MIN_BACKLOG_BYTES, deliveryRate * smoothedRtt * 2);
+
+        if (sample > 0) {
+            linkCapacity = congested ? sample : Math.max(linkCapacity, sample);
+        }
+        if (congested) {
+            backOff();
+        } else {
+            int next = sendInterval * 3 / 4;
+            sendInterval = next < BASE_INTERVAL_MS / 2 ? 0 : next;
+        }
+    }
+
+    // 发送线程每取出一批消息报告消息数、这批消息未稀疏时的字节数和写入耗时，now为取出的时间。
+    // PING排在积压之后，仅靠往返时延发现拥塞会滞后，本地积压和写入阻塞是更直接的信号
+    public synchronized void onBatchWritten(int messages, long queuedBytes, long writeMillis, long now) {
+        if (lastBatchTime > 0 && now > lastBatchTime) {
+            double sample = (double) queuedBytes / (now - lastBatchTime);
+            queuedRate = queuedRate == 0 ? sample : queuedRate * 0.75 + sample * 0.25;
+        }
+        lastBatchTime = now;
+        if (messages > MAX_QUEUED_MESSAGES || writeMillis > MAX_WRITE_BLOCK_MS) {
+            backOff();
+        }
+    }
+
+    private void backOff() {
+        sendInterval = Math.min(MAX_INTERVAL_MS, Math.max(BASE_INTERVAL_MS, sendInterval * 2));
+    }
+
+    public int getSendInterval() {
+        return sendInterval;
+    }
+
+    public synchronized DetailLevel getDetailLevel() {
+        int interval = sendInterval;
+        if (interval == 0) {
+            return DetailLevel.FULL;
+        }
+        // 每个间隔的预算为链路容量×间隔，排队字节为排队速率×间隔；尚未测得容量时不稀疏
+        double budget = linkCapacity * interval;
+        double queued = queuedRate * interval;
+        return linkCapacity > 0 && queued > budget * MINIMAL_OVERLOAD_RATIO
+                ? DetailLevel.MINIMAL : DetailLevel.THINNED;
+    }
+
+    public synchronized double getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    public synchronized double getDeliveryRate() {
+        return deliveryRate;
+    }
+
+    public synchronized double getQueuedRate() {
+        return queuedRate;
+    }
+
+    public synchronized double getLinkCapacity() {
+        return linkCapacity;
+    }
+}
@@ -0,0 +1,97 @@
+package com.shapesdemo.network;
+
+import com.shapesdemo.util.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 图形所有权租约：每个对端持有一份租约，登记它创建的图形句柄。
+// 对端通过心跳（或任何消息）续约；租约过期或连接断开后，它的图形成为孤立图形，由服务器统一删除
+public class LeaseTable {
+    private final long leaseDurationMillis;
+    private final IntObjectMap<Lease> leases = new IntObjectMap<>();
+
+    public LeaseTable(long leaseDurationMillis) {
+        this.leaseDurationMillis = leaseDurationMillis;
+    }
+
+    public synchronized void renew(int owner, long now) {
+        leaseOf(owner, now).expiresAt = now + leaseDurationMillis;
+    }
+
+    public synchronized void grant(int owner, int shapeHandle, long now) {
+        leaseOf(owner, now).shapes.put(shapeHandle, Boolean.TRUE);
+    }
+
+    // 所有者主动删除图形时调用，只有确实属于该所有者的图形才返回true
+    public synchronized boolean release(int owner, int shapeHandle) {
+        Lease lease = leases.get(owner);
+        return lease != null && lease.shapes.remove(shapeHandle) != null;
+    }
+
+    // 批量释放，返回其中确实属于该所有者的句柄；全部属于时返回原数组
+    public synchronized int[] releaseAll(int owner, int[] shapeHandles) {
+        int[] owned = new int[shapeHandles.length];
+        int count = 0;
+        for (int shapeHandle : shapeHandles) {
+            if (release(owner, shapeHandle)) {
+                owned[count++] = shapeHandle;
+            }
+        }
+        return count == shapeHandles.length ? shapeHandles : Arrays.copyOf(owned, count);
+    }
+
+    // 连接断开，租约在下一次清理时立即过期
+    public synchronized void revoke(int owner) {
+        Lease lease = leases.get(owner);
+        if (lease != null) {
+            lease.expiresAt = 0;
+        }
+    }
+
+    // 移除所有已过期的租约，返回它们名下的图形句柄
+    public int[] expire(long now) {
+        List<Lease> expired = new ArrayList<>();
+        synchronized (this) {
+            for (int owner : leases.keys()) {
+                Lease lease = leases.get(owner);
+                if (lease.expiresAt <= now) {
+                    leases.remove(owner);
+                    expired.add(lease);
+                }
+            }
+        }
+        // 已从表中摘除的租约不会再被修改，收集句柄时无需持锁
+        int count = 0;
+        for (Lease lease : expired) {
+            count += lease.shapes.size();
+        }
+        int[] handles = new int[count];
+        int n = 0;
+        for (Lease lease : expired) {
+            for (int handle : lease.shapes.keys()) {
+                handles[n++] = handle;
+            }
+        }
+        return handles;
+    }
+
+    private Lease leaseOf(int owner, long now) {
+        Lease lease = leases.get(owner);
+        if (lease == null) {
+            lease = new Lease(now + leaseDurationMillis);
+            leases.put(owner, lease);
+        }
+        return lease;
+    }
+
+    private static class Lease {
+        long expiresAt;
+        final IntObjectMap<Boolean> shapes = new IntObjectMap<>();
+
+        Lease(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.shapesdemo.network;
+
+import com.shapesdemo.util.IntObjectMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// 单个连接的发送队列。转发线程只负责入队，由该连接自己的发送线程按节奏取出，
+// 慢速客户端不会阻塞其他连接。需要合并时，同一图形尚未发出的UPDATE会被新的UPDATE覆盖
+public class OutboundQueue {
+    // 即使处于FULL等级，积压超过此数量也开始合并，避免队列无限增长
+    static final int MAX_UNCONFLATED_BACKLOG = 256;
+
+    private final ArrayDeque<Slot> queue = new ArrayDeque<>();
+    // 可被合并的UPDATE所在位置；非UPDATE消息是顺序屏障，入队后清空
+    private final IntObjectMap<Slot> pendingUpdates = new IntObjectMap<>();
+
+    public synchronized void offer(ShapeMessage message, boolean conflate) {
+        boolean isUpdate = "UPDATE".equals(message.getAction());
+        if (isUpdate && (conflate || queue.size() > MAX_UNCONFLATED_BACKLOG)) {
+            Slot slot = pendingUpdates.get(message.getShapeHandle());
+            if (slot != null) {
+                slot.message = message.coalesce(slot.message);
+                return;
+            }
+        }
+        Slot slot = new Slot(message);
+        queue.add(slot);
+        if (isUpdate) {
+            pendingUpdates.put(message.getShapeHandle(), slot);
+        } else if (!pendingUpdates.isEmpty()) {
+            pendingUpdates.clear();
+        }
+        notifyAll();
+    }
+
+    // 取出全部排队的消息，队列为空时最多等待timeoutMillis
+    public synchronized List<ShapeMessage> drain(long timeoutMillis) throws InterruptedException {
+        if (queue.isEmpty() && timeoutMillis > 0) {
+            wait(timeoutMillis);
+        }
+        List<ShapeMessage> messages = new ArrayList<>(queue.size());
+        for (Slot slot : queue) {
+            messages.add(slot.message);
+        }
+        queue.clear();
+        if (!pendingUpdates.isEmpty()) {
+            pendingUpdates.clear();
+        }
+        return messages;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private static class Slot {
+        ShapeMessage message;
+
+        Slot(ShapeMessage message) {
+            this.message = message;
+        }
+    }
+}
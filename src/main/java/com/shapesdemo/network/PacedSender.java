@@ -0,0 +1,138 @@
+package com.shapesdemo.network;
+
+import com.shapesdemo.util.IntObjectMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+// 单个连接的发送端。其他线程通过offer()入队，不会被慢速连接阻塞；
+// run()所在的发送线程定期发送PING，并按CongestionController估算的间隔和细节等级写出排队的消息。
+// MINIMAL等级下UPDATE照常发送位置，轨迹增量暂存并持续拼接，每隔几个发送周期稀疏后一次发出，
+// 接收方的轨迹始终连续，只是更粗、更新更慢
+public class PacedSender implements Runnable {
+    static final long PING_INTERVAL_MS = 500; // 测量往返时延的间隔
+    static final int MINIMAL_TRAIL_PERIOD = 4;  // MINIMAL等级下每隔多少个发送周期发出一次轨迹
+    static final int MINIMAL_TRAIL_STRIDE = 4;  // MINIMAL等级下每几个轨迹点保留一个
+
+    private final Socket socket;
+    private final CountingOutputStream countingOut;
+    private final DataOutputStream out;
+    private final OutboundQueue outbound = new OutboundQueue();
+    private final CongestionController congestion = new CongestionController();
+    private final int senderHandle; // 写入PING中的发送者句柄
+    // 按图形句柄暂存被推迟的轨迹，只由发送线程访问
+    private final IntObjectMap<ShapeMessage> deferredTrails = new IntObjectMap<>();
+    private int ticksUntilTrail;
+
+    public PacedSender(Socket socket, int senderHandle) throws IOException {
+        this.socket = socket;
+        this.countingOut = new CountingOutputStream(socket.getOutputStream());
+        // 计数在缓冲之下，统计的是实际写入套接字的字节
+        this.out = new DataOutputStream(new BufferedOutputStream(countingOut));
+        this.senderHandle = senderHandle;
+    }
+
+    // 只入队，不阻塞调用方；受限连接上同一图形的UPDATE会被合并
+    public void offer(ShapeMessage message) {
+        if (!socket.isClosed()) {
+            outbound.offer(message,
+                    congestion.getDetailLevel() != CongestionController.DetailLevel.FULL);
+        }
+    }
+
+    // 读取线程收到PONG时调用
+    public void onPong(ShapeMessage pong, long now) {
+        congestion.onPong(pong.getTimestamp(), now, pong.getReceivedBytes(), countingOut.getCount());
+    }
+
+    public CongestionController getCongestion() {
+        return congestion;
+    }
+
+    @Override
+    public void run() {
+        long nextPing = 0;
+        try {
+            while (!socket.isClosed()) {
+                long now = System.currentTimeMillis();
+                if (now >= nextPing) {
+                    write(new ShapeMessage(null, "PING", senderHandle));
+                    out.flush();
+                    nextPing = now + PING_INTERVAL_MS;
+                }
+
+                List<ShapeMessage> messages = outbound.drain(nextPing - now);
+                if (!messages.isEmpty() || !deferredTrails.isEmpty()) {
+                    long writeStart = System.currentTimeMillis();
+                    boolean minimal = congestion.getDetailLevel() == CongestionController.DetailLevel.MINIMAL;
+                    boolean sendTrails = !minimal || --ticksUntilTrail <= 0;
+                    if (sendTrails) {
+                        ticksUntilTrail = MINIMAL_TRAIL_PERIOD;
+                    }
+                    long queuedBytes = 0;
+                    for (ShapeMessage message : messages) {
+                        queuedBytes += message.encodedSize();
+                        write(deferTrail(message, sendTrails), minimal);
+                    }
+                    if (sendTrails) {
+                        flushDeferredTrails(minimal);
+                    }
+                    out.flush();
+                    congestion.onBatchWritten(messages.size(), queuedBytes,
+                            System.currentTimeMillis() - writeStart, writeStart);
+                }
+
+                // 受限连接按估算的间隔发送，间隔内到达的UPDATE在队列中合并
+                int interval = congestion.getSendInterval();
+                if (interval > 0) {
+                    Thread.sleep(interval);
+                }
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 轨迹未到发送时间时，把UPDATE的轨迹增量拼接到暂存的轨迹中，只发送位置
+    private ShapeMessage deferTrail(ShapeMessage message, boolean sendTrails) throws IOException {
+        if (!"UPDATE".equals(message.getAction())) {
+            // 非UPDATE消息是顺序屏障（如清除轨迹、删除图形），先发出暂存的轨迹
+            flushDeferredTrails(true);
+            return message;
+        }
+        ShapeMessage deferred = deferredTrails.remove(message.getShapeHandle());
+        if (deferred != null) {
+            message = message.coalesce(deferred);
+        }
+        if (sendTrails || message.getTrailDelta() == null) {
+            return message;
+        }
+        deferredTrails.put(message.getShapeHandle(), message);
+        return message.withoutTrail();
+    }
+
+    private void flushDeferredTrails(boolean thin) throws IOException {
+        if (deferredTrails.isEmpty()) {
+            return;
+        }
+        for (int shapeHandle : deferredTrails.keys()) {
+            write(deferredTrails.get(shapeHandle), thin);
+        }
+        deferredTrails.clear();
+    }
+
+    private void write(ShapeMessage message, boolean thin) throws IOException {
+        write(thin ? message.withThinnedTrail(MINIMAL_TRAIL_STRIDE) : message);
+    }
+
+    private void write(ShapeMessage message) throws IOException {
+        message.writeTo(out);
+    }
+}
@@ -1,19 +1,343 @@
 package com.shapesdemo.network;
 
 import com.shapesdemo.shape.Shape;
-import java.io.Serializable;
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class ShapeMessage implements Serializable {
-    private Shape shape;
-    private String action; // "UPDATE", "ADD", "REMOVE", "CLEAR_TRAILS"
-    private long timestamp;  // 发送时的时间戳
-    private String senderId; // 发送者ID
+public class ShapeMessage {
+    public static final int REMOVE_BATCH_SIZE = 256; // 每条REMOVE消息最多携带的句柄数
+    // 线路上的动作码即在此数组中的下标
+    private static final String[] ACTIONS =
+            {"ADD", "UPDATE", "REMOVE", "CLEAR_TRAILS", "ASSIGN_PEER", "PING", "PONG", "HEARTBEAT"};
+    private static final int FLAG_SHOW_TRAIL = 1;
+    private static final int FLAG_HAS_TRAIL = 2;
+    private static final int MAX_ENCODED_SHAPE_BYTES = 64 * 1024;
+    private static final int MAX_TRAIL_DELTA_BYTES = 64 * 1024;
 
-    public ShapeMessage(Shape shape, String action, String senderId) {
+    private Shape shape;     // 仅ADD消息携带完整图形（包含id与句柄的映射）
+    private String action; // "UPDATE", "ADD", "REMOVE", "CLEAR_TRAILS", "ASSIGN_PEER", "PING", "PONG", "HEARTBEAT"
+    private long timestamp;  // 发送时的时间戳，PONG中为所回应PING的时间戳
+    private int senderHandle; // 发送者句柄，由服务器在连接时分配
+
+    // UPDATE消息只携带句柄和变化的状态，不再发送整个图形
+    private int shapeHandle;
+    private int x;
+    private int y;
+    private boolean showTrail;
+    private int trailGeneration; // 发送方的轨迹代数，接收方代数不同时重置轨迹
+    private int trailBase;    // trailDelta覆盖的轨迹点序号范围为[trailBase, trailEnd)
+    private int trailEnd;     // 轨迹被稀疏时点数少于范围长度
+    private byte[] trailDelta; // 自上次同步以来新增的轨迹点，由TrailCodec编码
+    private long receivedBytes; // PONG中客户端累计收到的字节数
+    private int[] shapeHandles; // REMOVE消息中批量删除的图形句柄
+
+    public ShapeMessage(Shape shape, String action, int senderHandle) {
         this.shape = shape;
         this.action = action;
         this.timestamp = System.currentTimeMillis();
-        this.senderId = senderId;
+        this.senderHandle = senderHandle;
+        if (shape != null) {
+            this.shapeHandle = shape.getHandle();
+        }
+    }
+
+    // 创建基于句柄的UPDATE消息
+    public static ShapeMessage update(Shape shape, int senderHandle) {
+        ShapeMessage message = new ShapeMessage(null, "UPDATE", senderHandle);
+        message.shapeHandle = shape.getHandle();
+        message.x = shape.getX();
+        message.y = shape.getY();
+        message.showTrail = shape.isShowTrail();
+        message.trailGeneration = shape.getTrailGeneration();
+        if (shape.isShowTrail()) {
+            // 只发送接收方尚未拥有的新增轨迹点
+            int trailCount = shape.getTrailCount();
+            List<Point> appended = shape.getTrailPointsSince(shape.getSyncedTrailCount());
+            if (!appended.isEmpty()) {
+                message.trailBase = trailCount - appended.size();
+                message.trailEnd = trailCount;
+                message.trailDelta = TrailCodec.encode(appended);
+            }
+            shape.setSyncedTrailCount(trailCount);
+        }
+        return message;
+    }
+
+    // 创建批量删除图形的REMOVE消息
+    public static ShapeMessage remove(int[] shapeHandles, int senderHandle) {
+        ShapeMessage message = new ShapeMessage(null, "REMOVE", senderHandle);
+        message.shapeHandles = shapeHandles;
+        return message;
+    }
+
+    // 把大量句柄按REMOVE_BATCH_SIZE拆成多条REMOVE消息，保持原有顺序
+    public static List<ShapeMessage> removeBatches(int[] shapeHandles, int senderHandle) {
+        List<ShapeMessage> batches = new ArrayList<>();
+        for (int from = 0; from < shapeHandles.length; from += REMOVE_BATCH_SIZE) {
+            int[] batch = Arrays.copyOfRange(shapeHandles, from,
+                    Math.min(shapeHandles.length, from + REMOVE_BATCH_SIZE));
+            batches.add(remove(batch, senderHandle));
+        }
+        return batches;
+    }
+
+    // 合并同一图形的两条UPDATE（this较新）：位置取较新的，轨迹增量连续时拼接，
+    // 不连续或代数不同时只保留较新的部分，由接收方从新序号重新开始
+    public ShapeMessage coalesce(ShapeMessage older) {
+        ShapeMessage merged = copy();
+        if (older.trailDelta == null || older.trailGeneration != trailGeneration) {
+            return merged;
+        }
+        if (trailDelta == null) {
+            merged.trailBase = older.trailBase;
+            merged.trailEnd = older.trailEnd;
+            merged.trailDelta = older.trailDelta;
+            return merged;
+        }
+        List<Point> olderPoints = TrailCodec.decode(older.trailDelta);
+        // 稀疏过的轨迹无法按序号截取重叠部分，只保留较新的
+        boolean olderThinned = older.trailEnd - older.trailBase != olderPoints.size();
+        if (!olderThinned && older.trailEnd >= trailBase && older.trailBase <= trailBase) {
+            List<Point> points = new ArrayList<>(olderPoints.subList(0, trailBase - older.trailBase));
+            points.addAll(TrailCodec.decode(trailDelta));
+            merged.trailBase = older.trailBase;
+            merged.trailDelta = TrailCodec.encode(points);
+        }
+        return merged;
+    }
+
+    // 每stride个轨迹点只保留一个（总是保留最后一个），序号范围不变，用于带宽不足的连接。
+    // 接收方按范围推进序号，之后的增量仍然连续
+    public ShapeMessage withThinnedTrail(int stride) {
+        if (trailDelta == null || stride <= 1) {
+            return this;
+        }
+        List<Point> points = TrailCodec.decode(trailDelta);
+        if (points.size() <= 1) {
+            return this;
+        }
+        List<Point> kept = new ArrayList<>();
+        for (int i = (points.size() - 1) % stride; i < points.size(); i += stride) {
+            kept.add(points.get(i));
+        }
+        ShapeMessage thinned = copy();
+        thinned.trailDelta = TrailCodec.encode(kept);
+        return thinned;
+    }
+
+    // 去掉轨迹增量、只保留位置的副本，轨迹由发送方暂存后随后续消息发出
+    public ShapeMessage withoutTrail() {
+        if (trailDelta == null) {
+            return this;
+        }
+        ShapeMessage stripped = copy();
+        stripped.trailDelta = null;
+        return stripped;
+    }
+
+    // 按线路格式编码后的字节数
+    public int encodedSize() {
+        DataOutputStream counter = new DataOutputStream(OutputStream.nullOutputStream());
+        try {
+            writeTo(counter);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counter.size();
+    }
+
+    private ShapeMessage copy() {
+        ShapeMessage message = new ShapeMessage(shape, action, senderHandle);
+        message.timestamp = timestamp;
+        message.shapeHandle = shapeHandle;
+        message.x = x;
+        message.y = y;
+        message.showTrail = showTrail;
+        message.trailGeneration = trailGeneration;
+        message.trailBase = trailBase;
+        message.trailEnd = trailEnd;
+        message.trailDelta = trailDelta;
+        message.receivedBytes = receivedBytes;
+        message.shapeHandles = shapeHandles;
+        return message;
+    }
+
+    // 线路格式：动作码 + 发送者句柄，之后只写该动作用到的字段，整数使用变长编码。
+    // 只有ADD携带的完整图形仍使用Java对象序列化，其余消息不再为每条消息重复发送类描述
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(actionCode(action));
+        writeVarInt(out, senderHandle);
+        switch (action) {
+            case "ADD":
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream shapeOut = new ObjectOutputStream(bytes)) {
+                    shapeOut.writeObject(shape);
+                }
+                writeBytes(out, bytes.toByteArray());
+                break;
+            case "UPDATE":
+                writeVarLong(out, timestamp);
+                writeVarInt(out, shapeHandle);
+                writeVarInt(out, zigZag(x));
+                writeVarInt(out, zigZag(y));
+                out.writeByte((showTrail ? FLAG_SHOW_TRAIL : 0) | (trailDelta != null ? FLAG_HAS_TRAIL : 0));
+                if (trailDelta != null) {
+                    writeVarInt(out, trailGeneration);
+                    writeVarInt(out, trailBase);
+                    writeVarInt(out, trailEnd - trailBase);
+                    writeBytes(out, trailDelta);
+                }
+                break;
+            case "REMOVE":
+                writeVarInt(out, shapeHandles.length);
+                for (int handle : shapeHandles) {
+                    writeVarInt(out, handle);
+                }
+                break;
+            case "PING":
+                writeVarLong(out, timestamp);
+                break;
+            case "PONG":
+                writeVarLong(out, timestamp);
+                writeVarLong(out, receivedBytes);
+                break;
+            default:
+                // CLEAR_TRAILS、ASSIGN_PEER、HEARTBEAT只需要动作和发送者
+                break;
+        }
+    }
+
+    public static ShapeMessage readFrom(DataInput in) throws IOException {
+        int code = in.readUnsignedByte();
+        if (code >= ACTIONS.length) {
+            throw new StreamCorruptedException("unknown action " + code);
+        }
+        ShapeMessage message = new ShapeMessage(null, ACTIONS[code], readVarInt(in));
+        switch (message.action) {
+            case "ADD":
+                byte[] bytes = readBytes(in, MAX_ENCODED_SHAPE_BYTES);
+                try (ObjectInputStream shapeIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    message.shape = (Shape) shapeIn.readObject();
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    throw new StreamCorruptedException("malformed shape: " + e.getMessage());
+                }
+                message.shapeHandle = message.shape.getHandle();
+                break;
+            case "UPDATE":
+                message.timestamp = readVarLong(in);
+                message.shapeHandle = readVarInt(in);
+                message.x = unZigZag(readVarInt(in));
+                message.y = unZigZag(readVarInt(in));
+                int flags = in.readUnsignedByte();
+                message.showTrail = (flags & FLAG_SHOW_TRAIL) != 0;
+                if ((flags & FLAG_HAS_TRAIL) != 0) {
+                    message.trailGeneration = readVarInt(in);
+                    message.trailBase = readVarInt(in);
+                    message.trailEnd = message.trailBase + readVarInt(in);
+                    message.trailDelta = readBytes(in, MAX_TRAIL_DELTA_BYTES);
+                }
+                break;
+            case "REMOVE":
+                int count = readVarInt(in);
+                if (count < 0 || count > REMOVE_BATCH_SIZE) {
+                    throw new StreamCorruptedException("malformed remove count " + count);
+                }
+                message.shapeHandles = new int[count];
+                for (int i = 0; i < count; i++) {
+                    message.shapeHandles[i] = readVarInt(in);
+                }
+                break;
+            case "PING":
+                message.timestamp = readVarLong(in);
+                break;
+            case "PONG":
+                message.timestamp = readVarLong(in);
+                message.receivedBytes = readVarLong(in);
+                break;
+            default:
+                break;
+        }
+        return message;
+    }
+
+    private static int actionCode(String action) {
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (ACTIONS[i].equals(action)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown action " + action);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if ((value & ~0xFFFFFFFFL) != 0) {
+            throw new StreamCorruptedException("malformed varint");
+        }
+        return (int) value;
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new StreamCorruptedException("malformed varint");
+            }
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in, int maxLength) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > maxLength) {
+            throw new StreamCorruptedException("malformed length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
     }
 
     public Shape getShape() {
@@ -28,8 +352,48 @@ public class ShapeMessage implements Serializable {
         return timestamp;
     }
 
-    public String getSenderId() {
-        return senderId;
+    public int getSenderHandle() {
+        return senderHandle;
+    }
+
+    public int getShapeHandle() {
+        return shapeHandle;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public boolean isShowTrail() {
+        return showTrail;
+    }
+
+    public int getTrailGeneration() {
+        return trailGeneration;
+    }
+
+    public int getTrailBase() {
+        return trailBase;
+    }
+
+    public int getTrailEnd() {
+        return trailEnd;
+    }
+
+    public byte[] getTrailDelta() {
+        return trailDelta;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public int[] getShapeHandles() {
+        return shapeHandles;
     }
 
     public void setShape(Shape shape) {
@@ -44,7 +408,15 @@ public class ShapeMessage implements Serializable {
         this.timestamp = timestamp;
     }
 
-    public void setSenderId(String senderId) {
-        this.senderId = senderId;
+    public void setSenderHandle(int senderHandle) {
+        this.senderHandle = senderHandle;
+    }
+
+    public void setShapeHandle(int shapeHandle) {
+        this.shapeHandle = shapeHandle;
+    }
+
+    public void setReceivedBytes(long receivedBytes) {
+        this.receivedBytes = receivedBytes;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.shapesdemo.network;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// 轨迹点的紧凑编码：点数 + 每个点相对前一个点的增量，增量使用zig-zag变长整数，
+// 相邻轨迹点通常只相差几个像素，每个坐标一般只需要一个字节
+public final class TrailCodec {
+    private TrailCodec() {
+    }
+
+    public static byte[] encode(List<Point> points) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + points.size() * 2);
+        writeVarInt(out, points.size());
+        int prevX = 0;
+        int prevY = 0;
+        for (Point p : points) {
+            writeVarInt(out, zigZag(p.x - prevX));
+            writeVarInt(out, zigZag(p.y - prevY));
+            prevX = p.x;
+            prevY = p.y;
+        }
+        return out.toByteArray();
+    }
+
+    public static List<Point> decode(byte[] data) {
+        int[] pos = {0};
+        int count = readVarInt(data, pos);
+        // 每个点至少占两个字节，点数超出剩余数据时说明数据损坏，不能据此分配内存
+        if (count < 0 || count > (data.length - pos[0]) / 2) {
+            throw new IllegalArgumentException("malformed varint");
+        }
+        List<Point> points = new ArrayList<>(count);
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; i++) {
+            x += unZigZag(readVarInt(data, pos));
+            y += unZigZag(readVarInt(data, pos));
+            points.add(new Point(x, y));
+        }
+        return points;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (pos[0] >= data.length || shift > 28) {
+                throw new IllegalArgumentException("malformed varint");
+            }
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
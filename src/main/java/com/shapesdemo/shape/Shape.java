@@ -17,10 +17,19 @@ public abstract class Shape implements Serializable {
     protected int size;
     protected boolean showTrail;
     protected List<Point> trailPoints;
+    protected int trailCount;  // 自上次清除以来累计加入的轨迹点数，用作增量同步的序号
+    protected int trailGeneration;  // 轨迹代数，每次清除轨迹加一，区分清除前后的序号
+    protected float trailTolerance;  // 轨迹简化容差（像素），0表示不简化
+    protected transient List<Point> pendingTrail;  // 简化过程中尚未确定的轨迹点
+    protected transient int syncedTrailCount;  // 已经发送或从网络收到的轨迹点序号
     protected static final float INTERPOLATION_FACTOR = 0.3f;  // 插值因子
     protected final String id;  // 添加唯一标识符
+    protected int handle;  // 服务器分配的会话内整数句柄，NO_HANDLE表示尚未分配
+    protected int ownerHandle;  // 创建者的对端句柄，所有者断开后图形会被删除
+    public static final int NO_HANDLE = 0;
     protected static final int MAX_TRAIL_POINTS = 50; // 减少轨迹点数量以降低延迟
     protected static final int MIN_TRAIL_DISTANCE = 5; // 增加最小距离以减少点数
+    protected static final int MAX_PENDING_TRAIL_POINTS = 64; // 简化时最多暂存的点数
 
     public Shape(int x, int y, Color color, int size) {
         this.x = x;
@@ -37,7 +46,9 @@ public abstract class Shape implements Serializable {
     public abstract void draw(Graphics g);
 
     public void drawTrail(Graphics g) {
-        if (showTrail && trailPoints.size() > 1) {
+        // 简化模式下最后一段尚未确定，需要额外连到当前位置
+        boolean drawTail = trailTolerance > 0 && !trailPoints.isEmpty();
+        if (showTrail && (trailPoints.size() > 1 || drawTail)) {
             Graphics2D g2d = (Graphics2D) g;
             g2d.setColor(color);
             g2d.setStroke(new BasicStroke(2));
@@ -51,7 +62,29 @@ public abstract class Shape implements Serializable {
                     g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
                 }
             }
+            if (drawTail) {
+                Point last = trailPoints.get(trailPoints.size() - 1);
+                g2d.drawLine(last.x, last.y, x, y);
+            }
+        }
+    }
+
+    // 图形及其轨迹的绘制范围（包含线宽余量），用于分块渲染时判断与哪些分块相交
+    public java.awt.Rectangle getPaintBounds() {
+        int margin = 2;
+        int minX = x - size/2 - margin;
+        int minY = y - size/2 - margin;
+        int maxX = x + size/2 + margin;
+        int maxY = y + size/2 + margin;
+        if (showTrail) {
+            for (Point p : trailPoints) {
+                minX = Math.min(minX, p.x - margin);
+                minY = Math.min(minY, p.y - margin);
+                maxX = Math.max(maxX, p.x + margin);
+                maxY = Math.max(maxY, p.y + margin);
+            }
         }
+        return new java.awt.Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
     }
 
     public void move(int newX, int newY) {
@@ -93,34 +126,124 @@ public abstract class Shape implements Serializable {
             Point newPoint = new Point(x, y);
             
             // 检查是否与最后一个点距离太近
-            if (!trailPoints.isEmpty()) {
-                Point lastPoint = trailPoints.get(trailPoints.size() - 1);
-                if (lastPoint != null) {
-                    int dx = newPoint.x - lastPoint.x;
-                    int dy = newPoint.y - lastPoint.y;
-                    double distance = Math.sqrt(dx * dx + dy * dy);
-                    if (distance < MIN_TRAIL_DISTANCE) {
-                        return;
-                    }
+            Point lastPoint = lastTrailPoint();
+            if (lastPoint != null) {
+                int dx = newPoint.x - lastPoint.x;
+                int dy = newPoint.y - lastPoint.y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (distance < MIN_TRAIL_DISTANCE) {
+                    return;
                 }
             }
             
-            trailPoints.add(newPoint);
-            
-            // 限制轨迹点数量
-            while (trailPoints.size() > MAX_TRAIL_POINTS) {
-                trailPoints.remove(0);
+            if (trailTolerance > 0 && !trailPoints.isEmpty()) {
+                simplifyTrailPoint(newPoint);
+            } else {
+                commitTrailPoint(newPoint);
             }
         }
     }
 
-    public void clearTrail() {
+    private Point lastTrailPoint() {
+        if (pendingTrail != null && !pendingTrail.isEmpty()) {
+            return pendingTrail.get(pendingTrail.size() - 1);
+        }
+        return trailPoints.isEmpty() ? null : trailPoints.get(trailPoints.size() - 1);
+    }
+
+    // 流式的Douglas-Peucker简化：以最后确定的点为锚点，只要暂存点都在锚点到新点连线的
+    // 容差范围内就继续暂存；一旦超出，把上一个暂存点确定为新的锚点
+    private void simplifyTrailPoint(Point newPoint) {
+        if (pendingTrail == null) {
+            pendingTrail = new ArrayList<>();
+        }
+        Point anchor = trailPoints.get(trailPoints.size() - 1);
+        for (Point p : pendingTrail) {
+            if (distanceToSegment(p, anchor, newPoint) > trailTolerance) {
+                commitTrailPoint(pendingTrail.get(pendingTrail.size() - 1));
+                pendingTrail.clear();
+                break;
+            }
+        }
+        pendingTrail.add(newPoint);
+        if (pendingTrail.size() >= MAX_PENDING_TRAIL_POINTS) {
+            commitTrailPoint(newPoint);
+            pendingTrail.clear();
+        }
+    }
+
+    private static double distanceToSegment(Point p, Point a, Point b) {
+        double dx = b.x - a.x;
+        double dy = b.y - a.y;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((p.x - a.x) * dx + (p.y - a.y) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = p.x - (a.x + t * dx);
+        double ey = p.y - (a.y + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    private void commitTrailPoint(Point point) {
+        addToTrailWindow(point);
+        trailCount++;
+    }
+
+    private void addToTrailWindow(Point point) {
+        trailPoints.add(point);
+
+        // 限制轨迹点数量
+        while (trailPoints.size() > MAX_TRAIL_POINTS) {
+            trailPoints.remove(0);
+        }
+    }
+
+    public synchronized void clearTrail() {
         trailPoints.clear();
+        trailCount = 0;
+        trailGeneration++;
+        syncedTrailCount = 0;
+        if (pendingTrail != null) {
+            pendingTrail.clear();
+        }
         if (showTrail) {
             addTrailPoint(x, y);
         }
     }
 
+    // 返回序号不小于fromCount且仍在轨迹窗口内的点
+    public synchronized List<Point> getTrailPointsSince(int fromCount) {
+        int firstCount = trailCount - trailPoints.size();
+        int from = Math.max(fromCount, firstCount) - firstCount;
+        if (from >= trailPoints.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(trailPoints.subList(from, trailPoints.size()));
+    }
+
+    // 追加从网络收到的轨迹点，generation是发送方的轨迹代数，points覆盖序号范围[baseCount, endCount)。
+    // 带宽不足时发送方会稀疏轨迹，此时点数少于范围长度
+    public synchronized void appendTrailPoints(int generation, int baseCount, int endCount, List<Point> points) {
+        if (generation != trailGeneration || baseCount > trailCount) {
+            // 双方清除轨迹的时机不同（代数不一致），或中间的点缺失（迟加入或更新被丢弃），
+            // 都以发送方为准，从它的序号重新开始
+            trailPoints.clear();
+            if (pendingTrail != null) {
+                pendingTrail.clear();
+            }
+            trailGeneration = generation;
+            trailCount = baseCount;
+        }
+        if (endCount > trailCount) {
+            // 未稀疏时每个点对应一个序号，跳过已有的点；稀疏后的点无法与序号对应，全部追加
+            int from = endCount - baseCount == points.size() ? trailCount - baseCount : 0;
+            for (int i = from; i < points.size(); i++) {
+                addToTrailWindow(points.get(i));
+            }
+            trailCount = endCount;
+        }
+        syncedTrailCount = trailCount;
+    }
+
     // 重写equals方法，基于id进行比较
     @Override
     public boolean equals(Object o) {
@@ -138,6 +261,10 @@ public abstract class Shape implements Serializable {
 
     // Getters and setters
     public String getId() { return id; }
+    public int getHandle() { return handle; }
+    public void setHandle(int handle) { this.handle = handle; }
+    public int getOwnerHandle() { return ownerHandle; }
+    public void setOwnerHandle(int ownerHandle) { this.ownerHandle = ownerHandle; }
     public int getX() { return x; }
     public void setX(int x) { 
         this.x = x;
@@ -152,6 +279,13 @@ public abstract class Shape implements Serializable {
             addTrailPoint(x, y);
         }
     }
+    // 设置位置但不记录轨迹，用于应用远端状态
+    public void setPosition(int x, int y) {
+        this.x = x;
+        this.y = y;
+        this.targetX = x;
+        this.targetY = y;
+    }
     public int getTargetX() { return targetX; }
     public void setTargetX(int targetX) { this.targetX = targetX; }
     public int getTargetY() { return targetY; }
@@ -167,12 +301,9 @@ public abstract class Shape implements Serializable {
             addTrailPoint(x, y);
         }
     }
-    public List<Point> getTrailPoints() { 
-        return new ArrayList<>(trailPoints); 
-    }
-    public void setTrailPoints(List<Point> points) {
-        if (points != null) {
-            this.trailPoints = new CopyOnWriteArrayList<>(points);
-        }
-    }
+    public int getTrailCount() { return trailCount; }
+    public int getTrailGeneration() { return trailGeneration; }
+    public int getSyncedTrailCount() { return syncedTrailCount; }
+    public void setSyncedTrailCount(int syncedTrailCount) { this.syncedTrailCount = syncedTrailCount; }
+    public void setTrailTolerance(float trailTolerance) { this.trailTolerance = trailTolerance; }
 } 
\ No newline at end of file
@@ -0,0 +1,141 @@
+package com.shapesdemo.gui;
+
+import com.shapesdemo.shape.Circle;
+import com.shapesdemo.shape.Shape;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ShapeStoreTest {
+    private ShapeStore store;
+    private Shape a;
+    private Shape b;
+    private Shape c;
+
+    @BeforeEach
+    void setUp() {
+        store = new ShapeStore();
+        // 三个图形重叠在同一位置，c在最上层
+        a = shape(1);
+        b = shape(2);
+        c = shape(3);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+    }
+
+    private static Shape shape(int handle) {
+        Shape shape = new Circle(100, 100, Color.BLUE, 40);
+        shape.setHandle(handle);
+        return shape;
+    }
+
+    private List<Shape> order() {
+        List<Shape> shapes = new ArrayList<>();
+        for (Shape shape : store) {
+            shapes.add(shape);
+        }
+        return shapes;
+    }
+
+    // 与ShapesPanel的命中判断相同：点在以图形中心为圆心、size为直径的圆内
+    private Shape topmostAt(int x, int y) {
+        return store.findTopmost(shape -> {
+            int dx = x - shape.getX();
+            int dy = y - shape.getY();
+            return dx * dx + dy * dy <= shape.getSize() * shape.getSize() / 4;
+        });
+    }
+
+    @Test
+    void iteratesInInsertionOrder() {
+        assertEquals(Arrays.asList(a, b, c), order());
+        assertSame(c, topmostAt(100, 100));
+        assertSame(b, store.get(2));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void removingHeadKeepsOrder() {
+        assertSame(a, store.remove(1));
+        assertEquals(Arrays.asList(b, c), order());
+        assertSame(c, topmostAt(100, 100));
+        store.add(shape(4));
+        assertEquals(3, order().size());
+    }
+
+    @Test
+    void removingMiddleKeepsOrder() {
+        assertSame(b, store.remove(2));
+        assertEquals(Arrays.asList(a, c), order());
+        assertNull(store.get(2));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void removingTailExposesShapeBelow() {
+        assertSame(c, store.remove(3));
+        assertEquals(Arrays.asList(a, b), order());
+        assertSame(b, topmostAt(100, 100));
+
+        // 新图形追加到新的尾部之后
+        Shape d = shape(4);
+        store.add(d);
+        assertEquals(Arrays.asList(a, b, d), order());
+        assertSame(d, topmostAt(100, 100));
+    }
+
+    @Test
+    void removingEverythingEmptiesTheStore() {
+        store.remove(2);
+        store.remove(1);
+        store.remove(3);
+        assertEquals(0, store.size());
+        assertEquals(0, order().size());
+        assertNull(topmostAt(100, 100));
+
+        Shape d = shape(4);
+        store.add(d);
+        assertEquals(Arrays.asList(d), order());
+    }
+
+    @Test
+    void removingUnknownHandleReturnsNull() {
+        assertNull(store.remove(99));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void bindHandleMovesPendingShapeToHandleLookup() {
+        Shape pending = new Circle(300, 300, Color.RED, 40);
+        store.add(pending);
+        assertEquals(4, store.size());
+        assertSame(pending, topmostAt(300, 300));
+
+        assertSame(pending, store.bindHandle(pending.getId(), 7));
+        assertEquals(7, pending.getHandle());
+        assertSame(pending, store.get(7));
+        // 只能绑定一次
+        assertNull(store.bindHandle(pending.getId(), 8));
+        assertNull(store.get(8));
+        assertEquals(Arrays.asList(a, b, c, pending), order());
+    }
+
+    @Test
+    void pendingShapeCannotBeRemovedByHandle() {
+        Shape pending = new Circle(300, 300, Color.RED, 40);
+        store.add(pending);
+        assertNull(store.remove(Shape.NO_HANDLE));
+        assertNull(store.remove(7));
+        assertEquals(4, store.size());
+        assertNull(store.bindHandle("unknown", 7));
+    }
+}
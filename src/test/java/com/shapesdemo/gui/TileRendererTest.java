@@ -0,0 +1,109 @@
+package com.shapesdemo.gui;
+
+import com.shapesdemo.shape.Circle;
+import com.shapesdemo.shape.Rectangle;
+import com.shapesdemo.shape.Shape;
+import com.shapesdemo.shape.Triangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TileRendererTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int MAX_CHANNEL_DIFF = 2; // 分块与整体绘制的抗锯齿结果可能相差一两个色阶
+
+    private final List<Shape> shapes = new ArrayList<>();
+    private TileRenderer renderer;
+
+    @BeforeEach
+    void setUp() {
+        // 图形和轨迹都跨过分块边界（128像素）
+        shapes.add(new Circle(128, 100, Color.BLUE, 50));
+        shapes.add(new Rectangle(250, 128, Color.GREEN, 40));
+        shapes.add(new Triangle(60, 130, Color.ORANGE, 30));
+        Shape moving = shapes.get(0);
+        moving.setShowTrail(true);
+        for (int i = 1; i <= 10; i++) {
+            moving.setX(128 + i * 15);
+            moving.setY(100 - i * 6);
+        }
+        renderer = new TileRenderer(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renderer.shutdown();
+    }
+
+    // 在设备缩放为scale的画布上分块绘制，结果应与直接绘制一致（而不是放大后的模糊图像）
+    @ParameterizedTest
+    @ValueSource(doubles = {1, 1.25, 1.5, 2})
+    void tiledOutputMatchesSequentialAtDeviceScale(double scale) {
+        Shape selected = shapes.get(1);
+        BufferedImage expected = paint(scale, g2d -> ShapesPanel.paintShapes(g2d, shapes, selected));
+        BufferedImage actual = paint(scale, g2d -> {
+            renderer.render(shapes, selected, WIDTH, HEIGHT, scale, scale);
+            renderer.composite(g2d);
+        });
+        assertEquals(0, countDifferentPixels(expected, actual));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {1, 2})
+    void reusedTilesMatchAfterScaleChange(double scale) {
+        // 先按另一缩放绘制一帧，缩放变化后分块必须重新分配
+        paint(scale == 1 ? 2 : 1, g2d -> renderer.render(shapes, null, WIDTH, HEIGHT,
+                scale == 1 ? 2 : 1, scale == 1 ? 2 : 1));
+        BufferedImage expected = paint(scale, g2d -> ShapesPanel.paintShapes(g2d, shapes, null));
+        BufferedImage actual = paint(scale, g2d -> {
+            renderer.render(shapes, null, WIDTH, HEIGHT, scale, scale);
+            renderer.composite(g2d);
+        });
+        assertEquals(0, countDifferentPixels(expected, actual));
+    }
+
+    private interface Painter {
+        void paint(Graphics2D g2d);
+    }
+
+    private static BufferedImage paint(double scale, Painter painter) {
+        BufferedImage image = new BufferedImage((int) Math.round(WIDTH * scale), (int) Math.round(HEIGHT * scale),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g2d.scale(scale, scale);
+            painter.paint(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    private static int countDifferentPixels(BufferedImage expected, BufferedImage actual) {
+        int different = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)) > MAX_CHANNEL_DIFF) {
+                        different++;
+                        break;
+                    }
+                }
+            }
+        }
+        return different;
+    }
+}
@@ -0,0 +1,204 @@
+package com.shapesdemo.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CongestionControllerTest {
+    private static final long RTT = 10;
+
+    // 模拟一次PONG：往返时延为rtt，客户端收到的字节数为received，服务器已发送sent
+    private static void pong(CongestionController controller, long now, long rtt, long received, long sent) {
+        controller.onPong(now - rtt, now, received, sent);
+    }
+
+    @Test
+    void newConnectionStartsThinnedAndOpensUpOnHealthyPongs() {
+        CongestionController controller = new CongestionController();
+        assertEquals(CongestionController.BASE_INTERVAL_MS, controller.getSendInterval());
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+
+        // 16 -> 12 -> 9 -> 6，低于基础间隔的一半后不再限速
+        for (int i = 1; i <= 3; i++) {
+            pong(controller, 1000 + i * 500, RTT, i * 5000, i * 5000);
+        }
+        assertEquals(0, controller.getSendInterval());
+        assertEquals(CongestionController.DetailLevel.FULL, controller.getDetailLevel());
+    }
+
+    @Test
+    void estimatesRttAndDeliveryRate() {
+        CongestionController controller = new CongestionController();
+        pong(controller, 1000, RTT, 0, 0);
+        pong(controller, 1500, RTT, 5000, 5000);
+        pong(controller, 2000, RTT, 10000, 10000);
+
+        assertEquals(RTT, controller.getSmoothedRtt(), 1e-9);
+        // 每500毫秒收到5000字节
+        assertEquals(10.0, controller.getDeliveryRate(), 1e-9);
+    }
+
+    @Test
+    void queueingDelayBacksOff() {
+        CongestionController controller = openedUp();
+        // 最小往返时延10毫秒，超过2倍加松弛量即视为排队
+        pong(controller, 10000, RTT * 2 + 60, 20000, 20000);
+        assertEquals(CongestionController.BASE_INTERVAL_MS, controller.getSendInterval());
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+    }
+
+    @Test
+    void bytesInFlightBeyondBacklogBacksOff() {
+        CongestionController controller = openedUp();
+        pong(controller, 10000, RTT, 20000, 20000 + 128 * 1024);
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+    }
+
+    @Test
+    void batchBacklogAndWriteBlockingBackOff() {
+        CongestionController controller = openedUp();
+        controller.onBatchWritten(CongestionController.MAX_QUEUED_MESSAGES, 0, 0, 3000);
+        assertEquals(CongestionController.DetailLevel.FULL, controller.getDetailLevel());
+
+        controller.onBatchWritten(CongestionController.MAX_QUEUED_MESSAGES + 1, 0, 0, 3010);
+        assertEquals(CongestionController.BASE_INTERVAL_MS, controller.getSendInterval());
+
+        // 16 -> 32 -> 64
+        controller.onBatchWritten(1, 0, CongestionController.MAX_WRITE_BLOCK_MS + 1, 3020);
+        controller.onBatchWritten(1, 0, CongestionController.MAX_WRITE_BLOCK_MS + 1, 3030);
+        assertEquals(64, controller.getSendInterval());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onBatchWritten(CongestionController.MAX_QUEUED_MESSAGES + 1, 0, 0, 3040 + i * 10);
+        }
+        assertEquals(CongestionController.MAX_INTERVAL_MS, controller.getSendInterval());
+    }
+
+    @Test
+    void longIntervalWithinBudgetStaysThinned() {
+        CongestionController controller = backedOffToMax();
+        // 交付速率10字节/毫秒，每500毫秒排队2000字节，远低于预算
+        long now = 5000;
+        for (int i = 0; i < 10; i++) {
+            now += 500;
+            controller.onBatchWritten(10, 2000, 0, now);
+        }
+        assertEquals(4.0, controller.getQueuedRate(), 1e-9);
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+    }
+
+    @Test
+    void queuedBytesBeyondBudgetSelectMinimalAtAnyInterval() {
+        // 新连接的发送间隔还很短，但排队字节是交付能力的两倍
+        CongestionController controller = new CongestionController();
+        pong(controller, 1000, RTT, 0, 0);
+        pong(controller, 1500, RTT, 5000, 5000);
+        int interval = controller.getSendInterval();
+        assertTrue(interval > 0 && interval <= CongestionController.BASE_INTERVAL_MS);
+        long now = 2000;
+        for (int i = 0; i < 10; i++) {
+            now += 16;
+            controller.onBatchWritten(10, 320, 0, now);
+        }
+        assertEquals(CongestionController.DetailLevel.MINIMAL, controller.getDetailLevel());
+
+        // 排队减少到预算以内后恢复THINNED
+        for (int i = 0; i < 20; i++) {
+            now += 16;
+            controller.onBatchWritten(10, 80, 0, now);
+        }
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+    }
+
+    @Test
+    void smallOverloadWithinMarginStaysThinned() {
+        CongestionController controller = backedOffToMax();
+        long now = 5000;
+        for (int i = 0; i < 20; i++) {
+            now += 500;
+            controller.onBatchWritten(10, 5500, 0, now); // 比交付速率高10%
+        }
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+        for (int i = 0; i < 20; i++) {
+            now += 500;
+            controller.onBatchWritten(10, 7500, 0, now); // 高50%
+        }
+        assertEquals(CongestionController.DetailLevel.MINIMAL, controller.getDetailLevel());
+    }
+
+    @Test
+    void appLimitedDeliveryDoesNotLowerCapacity() {
+        CongestionController controller = backedOffToMax();
+        assertEquals(10.0, controller.getLinkCapacity(), 1e-9);
+        // 降级后负载变小，交付速率随之下降，但链路并未拥塞，容量估算保持不变
+        long now = 5000;
+        long bytes = 15000;
+        for (int i = 0; i < 5; i++) {
+            now += 500;
+            bytes += 1000;
+            pong(controller, now, RTT, bytes, bytes);
+        }
+        assertTrue(controller.getDeliveryRate() < 5);
+        assertEquals(10.0, controller.getLinkCapacity(), 1e-9);
+        long batchTime = now;
+        for (int i = 0; i < 20; i++) {
+            batchTime += 500;
+            controller.onBatchWritten(10, 2500, 0, batchTime); // 排队速率为容量的一半
+        }
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+
+        // 拥塞时的交付速率即链路容量
+        now += 500;
+        bytes += 500;
+        pong(controller, now, RTT * 2 + 60, bytes, bytes);
+        assertEquals(1.0, controller.getLinkCapacity(), 1e-9);
+        assertEquals(CongestionController.DetailLevel.MINIMAL, controller.getDetailLevel());
+    }
+
+    @Test
+    void noMinimalBeforeDeliveryRateIsKnown() {
+        CongestionController controller = new CongestionController();
+        controller.onBatchWritten(10, 100_000, 0, 1000);
+        controller.onBatchWritten(10, 100_000, 0, 1016);
+        assertEquals(0.0, controller.getDeliveryRate());
+        assertEquals(CongestionController.DetailLevel.THINNED, controller.getDetailLevel());
+    }
+
+    @Test
+    void recoversAfterCongestionClears() {
+        CongestionController controller = backedOffToMax();
+        long now = 10000;
+        long bytes = 20000;
+        int pongs = 0;
+        while (controller.getDetailLevel() != CongestionController.DetailLevel.FULL) {
+            now += 500;
+            bytes += 5000;
+            pong(controller, now, RTT, bytes, bytes);
+            pongs++;
+        }
+        // 500 -> 375 -> 281 -> ... -> 11 -> 8 -> 0，每次缩小到3/4
+        assertEquals(15, pongs);
+    }
+
+    // 交付速率为10字节/毫秒、发送间隔已退避到上限的控制器
+    private static CongestionController backedOffToMax() {
+        CongestionController controller = openedUp();
+        for (int i = 0; i < 10; i++) {
+            controller.onBatchWritten(CongestionController.MAX_QUEUED_MESSAGES + 1, 0, 0, 0);
+        }
+        assertEquals(CongestionController.MAX_INTERVAL_MS, controller.getSendInterval());
+        assertEquals(10.0, controller.getDeliveryRate(), 1e-9);
+        return controller;
+    }
+
+    // 经过几次正常的PONG后已不再限速的控制器
+    private static CongestionController openedUp() {
+        CongestionController controller = new CongestionController();
+        for (int i = 1; i <= 3; i++) {
+            pong(controller, 1000 + i * 500, RTT, i * 5000, i * 5000);
+        }
+        assertEquals(CongestionController.DetailLevel.FULL, controller.getDetailLevel());
+        return controller;
+    }
+}
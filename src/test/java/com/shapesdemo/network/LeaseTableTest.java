@@ -0,0 +1,103 @@
+package com.shapesdemo.network;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaseTableTest {
+    private static final long DURATION = 5000;
+    private static final int OWNER = 2;
+    private static final int OTHER = 3;
+
+    private LeaseTable leases;
+
+    @BeforeEach
+    void setUp() {
+        leases = new LeaseTable(DURATION);
+        leases.renew(OWNER, 0);
+        leases.grant(OWNER, 10, 0);
+        leases.grant(OWNER, 11, 0);
+        leases.grant(OWNER, 12, 0);
+        leases.renew(OTHER, 0);
+        leases.grant(OTHER, 20, 0);
+    }
+
+    private static int[] sorted(int[] handles) {
+        int[] copy = handles.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Test
+    void leaseExpiresAfterDuration() {
+        assertEquals(0, leases.expire(DURATION - 1).length);
+        assertArrayEquals(new int[]{10, 11, 12, 20}, sorted(leases.expire(DURATION)));
+    }
+
+    @Test
+    void renewExtendsLease() {
+        leases.renew(OWNER, 4000);
+        assertArrayEquals(new int[]{20}, leases.expire(DURATION));
+        assertArrayEquals(new int[]{10, 11, 12}, sorted(leases.expire(4000 + DURATION)));
+    }
+
+    @Test
+    void expireReturnsOwnersHandlesOnceAndDropsTheLease() {
+        leases.renew(OTHER, 4000);
+        assertArrayEquals(new int[]{10, 11, 12}, sorted(leases.expire(DURATION)));
+        // 租约已移除，再次清理不会重复返回
+        assertEquals(0, leases.expire(DURATION).length);
+        assertFalse(leases.release(OWNER, 10));
+
+        // 同一对端之后重新续约得到新的空租约，过期时只剩另一对端的图形
+        leases.renew(OWNER, DURATION);
+        assertArrayEquals(new int[]{20}, leases.expire(DURATION * 3));
+    }
+
+    @Test
+    void revokeExpiresOnNextSweep() {
+        leases.revoke(OWNER);
+        assertArrayEquals(new int[]{10, 11, 12}, sorted(leases.expire(1)));
+        assertEquals(0, leases.expire(1).length);
+    }
+
+    @Test
+    void releasedShapeIsNotExpired() {
+        assertTrue(leases.release(OWNER, 11));
+        assertFalse(leases.release(OWNER, 11));
+        leases.revoke(OWNER);
+        assertArrayEquals(new int[]{10, 12}, sorted(leases.expire(1)));
+    }
+
+    @Test
+    void nonOwnerCannotRelease() {
+        assertFalse(leases.release(OTHER, 10));
+        assertFalse(leases.release(99, 10));
+        leases.revoke(OWNER);
+        assertArrayEquals(new int[]{10, 11, 12}, sorted(leases.expire(1)));
+    }
+
+    @Test
+    void grantCreatesLeaseForUnknownOwner() {
+        leases.grant(7, 30, 1000);
+        assertArrayEquals(new int[]{10, 11, 12, 20}, sorted(leases.expire(DURATION)));
+        assertArrayEquals(new int[]{30}, leases.expire(1000 + DURATION));
+    }
+
+    @Test
+    void releaseAllKeepsOnlyOwnedHandles() {
+        int[] requested = {10, 20, 12, 99};
+        assertArrayEquals(new int[]{10, 12}, leases.releaseAll(OWNER, requested));
+        assertEquals(0, leases.releaseAll(OWNER, new int[]{10, 12}).length);
+
+        int[] all = {20};
+        assertSame(all, leases.releaseAll(OTHER, all));
+    }
+}
@@ -0,0 +1,87 @@
+package com.shapesdemo.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+    private static ShapeMessage update(int shapeHandle, int x) {
+        ShapeMessage message = new ShapeMessage(null, "UPDATE", 1);
+        message.setShapeHandle(shapeHandle);
+        message.setTimestamp(x);
+        return message;
+    }
+
+    @Test
+    void keepsEveryUpdateWithoutConflation() {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(update(7, 1), false);
+        queue.offer(update(7, 2), false);
+        queue.offer(update(7, 3), false);
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    void conflatedUpdatesReplaceThePendingOneInPlace() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(update(7, 1), true);
+        queue.offer(update(8, 1), true);
+        queue.offer(update(7, 2), true);
+        assertEquals(2, queue.size());
+
+        List<ShapeMessage> messages = queue.drain(0);
+        // 合并后的UPDATE保留在第一次入队的位置
+        assertEquals(7, messages.get(0).getShapeHandle());
+        assertEquals(2, messages.get(0).getTimestamp());
+        assertEquals(8, messages.get(1).getShapeHandle());
+    }
+
+    @Test
+    void nonUpdateMessageIsABarrier() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(update(7, 1), true);
+        queue.offer(ShapeMessage.remove(new int[]{9}, 1), true);
+        queue.offer(update(7, 2), true);
+        queue.offer(update(7, 3), true);
+        assertEquals(3, queue.size());
+
+        List<ShapeMessage> messages = queue.drain(0);
+        assertEquals(1, messages.get(0).getTimestamp());
+        assertEquals("REMOVE", messages.get(1).getAction());
+        assertEquals(3, messages.get(2).getTimestamp());
+    }
+
+    @Test
+    void largeBacklogConflatesEvenAtFullDetail() {
+        OutboundQueue queue = new OutboundQueue();
+        int backlog = OutboundQueue.MAX_UNCONFLATED_BACKLOG + 1;
+        for (int handle = 1; handle <= backlog; handle++) {
+            queue.offer(update(handle, 1), false);
+        }
+        queue.offer(update(1, 2), false);
+        assertEquals(backlog, queue.size());
+    }
+
+    @Test
+    void drainEmptiesTheQueueAndEndsMerging() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(update(7, 1), true);
+        assertEquals(1, queue.drain(0).size());
+        assertEquals(0, queue.size());
+
+        // 已经取出的UPDATE不能再被合并
+        queue.offer(update(7, 2), true);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void drainWaitsForTimeoutWhenEmpty() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue();
+        long start = System.currentTimeMillis();
+        assertTrue(queue.drain(50).isEmpty());
+        assertTrue(System.currentTimeMillis() - start >= 40);
+    }
+}
@@ -0,0 +1,303 @@
+package com.shapesdemo.network;
+
+import com.shapesdemo.shape.Circle;
+import com.shapesdemo.shape.Shape;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShapeMessageTest {
+    private Shape shape;
+
+    @BeforeEach
+    void setUp() {
+        shape = new Circle(0, 0, Color.RED, 20);
+        shape.setHandle(5);
+        shape.setShowTrail(true); // 记录轨迹点(0, 0)
+    }
+
+    private ShapeMessage moveTo(int x) {
+        shape.setX(x);
+        return ShapeMessage.update(shape, 1);
+    }
+
+    @Test
+    void updateCarriesOnlyUnsyncedTrailPoints() {
+        ShapeMessage first = moveTo(10);
+        assertEquals(0, first.getTrailBase());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(10, 0)), TrailCodec.decode(first.getTrailDelta()));
+
+        ShapeMessage second = moveTo(20);
+        assertEquals(2, second.getTrailBase());
+        assertEquals(Arrays.asList(new Point(20, 0)), TrailCodec.decode(second.getTrailDelta()));
+    }
+
+    @Test
+    void coalesceSplicesContiguousTrails() {
+        ShapeMessage older = moveTo(10);
+        ShapeMessage newer = moveTo(20);
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(20, merged.getX());
+        assertEquals(0, merged.getTrailBase());
+        assertEquals(3, merged.getTrailEnd());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(10, 0), new Point(20, 0)),
+                TrailCodec.decode(merged.getTrailDelta()));
+    }
+
+    @Test
+    void coalesceDropsOverlappingPoints() {
+        ShapeMessage older = moveTo(10);
+        // 较新的消息从序号1开始，与较旧的消息重叠一个点
+        shape.setSyncedTrailCount(1);
+        ShapeMessage newer = moveTo(20);
+        assertEquals(1, newer.getTrailBase());
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(0, merged.getTrailBase());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(10, 0), new Point(20, 0)),
+                TrailCodec.decode(merged.getTrailDelta()));
+    }
+
+    @Test
+    void coalesceKeepsOnlyNewerTrailAcrossAGap() {
+        ShapeMessage older = moveTo(10);
+        moveTo(20); // 这条消息被丢弃，中间的轨迹点缺失
+        ShapeMessage newer = moveTo(30);
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(3, merged.getTrailBase());
+        assertEquals(Arrays.asList(new Point(30, 0)), TrailCodec.decode(merged.getTrailDelta()));
+    }
+
+    @Test
+    void coalesceKeepsOnlyNewerTrailAcrossAClear() {
+        ShapeMessage older = moveTo(10);
+        shape.clearTrail();
+        ShapeMessage newer = moveTo(20);
+        assertEquals(older.getTrailGeneration() + 1, newer.getTrailGeneration());
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(newer.getTrailGeneration(), merged.getTrailGeneration());
+        assertEquals(0, merged.getTrailBase());
+        assertEquals(Arrays.asList(new Point(10, 0), new Point(20, 0)),
+                TrailCodec.decode(merged.getTrailDelta()));
+    }
+
+    @Test
+    void coalesceKeepsOlderTrailWhenNewerHasNone() {
+        ShapeMessage older = moveTo(10);
+        shape.setPosition(12, 0); // 不记录轨迹
+        ShapeMessage newer = ShapeMessage.update(shape, 1);
+        assertNull(newer.getTrailDelta());
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(12, merged.getX());
+        assertEquals(0, merged.getTrailBase());
+        assertNotNull(merged.getTrailDelta());
+        assertEquals(2, TrailCodec.decode(merged.getTrailDelta()).size());
+    }
+
+    private static byte[] encode(ShapeMessage... messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ShapeMessage message : messages) {
+            message.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ShapeMessage decode(byte[] bytes) throws IOException {
+        return ShapeMessage.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void updateRoundTripsInCompactForm() throws IOException {
+        shape.clearTrail();
+        shape.setX(-40);
+        ShapeMessage message = ShapeMessage.update(shape, 3);
+        byte[] bytes = encode(message);
+        // 动作、发送者、时间戳、句柄、坐标、标志和两个轨迹点的增量
+        assertTrue(bytes.length <= 24, "UPDATE took " + bytes.length + " bytes");
+
+        ShapeMessage decoded = decode(bytes);
+        assertEquals("UPDATE", decoded.getAction());
+        assertEquals(3, decoded.getSenderHandle());
+        assertEquals(message.getTimestamp(), decoded.getTimestamp());
+        assertEquals(5, decoded.getShapeHandle());
+        assertEquals(-40, decoded.getX());
+        assertEquals(0, decoded.getY());
+        assertTrue(decoded.isShowTrail());
+        assertEquals(1, decoded.getTrailGeneration());
+        assertEquals(0, decoded.getTrailBase());
+        assertEquals(2, decoded.getTrailEnd());
+        assertArrayEquals(message.getTrailDelta(), decoded.getTrailDelta());
+        assertEquals(bytes.length, message.encodedSize());
+    }
+
+    @Test
+    void thinnedTrailKeepsRangeAndLastPoint() throws IOException {
+        shape.clearTrail();
+        for (int x = 10; x <= 90; x += 10) {
+            shape.setX(x);
+        }
+        ShapeMessage message = ShapeMessage.update(shape, 1);
+        assertEquals(10, TrailCodec.decode(message.getTrailDelta()).size());
+
+        ShapeMessage thinned = message.withThinnedTrail(4);
+        assertEquals(Arrays.asList(new Point(10, 0), new Point(50, 0), new Point(90, 0)),
+                TrailCodec.decode(thinned.getTrailDelta()));
+        assertEquals(message.getTrailBase(), thinned.getTrailBase());
+        assertEquals(message.getTrailEnd(), thinned.getTrailEnd());
+        assertTrue(thinned.encodedSize() < message.encodedSize());
+
+        ShapeMessage decoded = decode(encode(thinned));
+        assertEquals(0, decoded.getTrailBase());
+        assertEquals(10, decoded.getTrailEnd());
+        assertEquals(3, TrailCodec.decode(decoded.getTrailDelta()).size());
+
+        assertSame(message, message.withThinnedTrail(1));
+        ShapeMessage noTrail = message.withoutTrail();
+        assertSame(noTrail, noTrail.withThinnedTrail(4));
+    }
+
+    @Test
+    void coalesceDoesNotSpliceOntoThinnedTrail() {
+        moveTo(10);
+        moveTo(20);
+        shape.setSyncedTrailCount(0);
+        ShapeMessage older = moveTo(30).withThinnedTrail(2);
+        ShapeMessage newer = moveTo(40);
+
+        ShapeMessage merged = newer.coalesce(older);
+        assertEquals(4, merged.getTrailBase());
+        assertEquals(5, merged.getTrailEnd());
+        assertEquals(Arrays.asList(new Point(40, 0)), TrailCodec.decode(merged.getTrailDelta()));
+    }
+
+    @Test
+    void updateWithoutTrailRoundTrips() throws IOException {
+        shape.setShowTrail(false);
+        shape.setPosition(70, -3);
+        ShapeMessage decoded = decode(encode(ShapeMessage.update(shape, 3)));
+        assertEquals(70, decoded.getX());
+        assertEquals(-3, decoded.getY());
+        assertEquals(false, decoded.isShowTrail());
+        assertNull(decoded.getTrailDelta());
+    }
+
+    @Test
+    void addCarriesFullShape() throws IOException {
+        shape.setOwnerHandle(3);
+        ShapeMessage decoded = decode(encode(new ShapeMessage(shape, "ADD", 3)));
+        assertEquals("ADD", decoded.getAction());
+        assertEquals(shape, decoded.getShape());
+        assertEquals(5, decoded.getShapeHandle());
+        assertEquals(3, decoded.getShape().getOwnerHandle());
+        assertEquals(Color.RED, decoded.getShape().getColor());
+    }
+
+    @Test
+    void controlMessagesRoundTripOnOneStream() throws IOException {
+        ShapeMessage ping = new ShapeMessage(null, "PING", 1);
+        ShapeMessage pong = new ShapeMessage(null, "PONG", 2);
+        pong.setTimestamp(ping.getTimestamp());
+        pong.setReceivedBytes(5_000_000_000L);
+        byte[] bytes = encode(ping, pong, ShapeMessage.remove(new int[]{4, 300, 70000}, 2),
+                new ShapeMessage(null, "HEARTBEAT", 2), new ShapeMessage(null, "CLEAR_TRAILS", 2),
+                new ShapeMessage(null, "ASSIGN_PEER", 9));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        ShapeMessage decoded = ShapeMessage.readFrom(in);
+        assertEquals("PING", decoded.getAction());
+        assertEquals(ping.getTimestamp(), decoded.getTimestamp());
+        decoded = ShapeMessage.readFrom(in);
+        assertEquals("PONG", decoded.getAction());
+        assertEquals(ping.getTimestamp(), decoded.getTimestamp());
+        assertEquals(5_000_000_000L, decoded.getReceivedBytes());
+        decoded = ShapeMessage.readFrom(in);
+        assertArrayEquals(new int[]{4, 300, 70000}, decoded.getShapeHandles());
+        assertEquals("HEARTBEAT", ShapeMessage.readFrom(in).getAction());
+        assertEquals("CLEAR_TRAILS", ShapeMessage.readFrom(in).getAction());
+        decoded = ShapeMessage.readFrom(in);
+        assertEquals("ASSIGN_PEER", decoded.getAction());
+        assertEquals(9, decoded.getSenderHandle());
+        assertThrows(EOFException.class, () -> ShapeMessage.readFrom(in));
+    }
+
+    @Test
+    void rejectsMalformedInput() throws IOException {
+        assertThrows(StreamCorruptedException.class, () -> decode(new byte[]{(byte) 0xFF, 1}));
+
+        byte[] update = encode(moveTo(10));
+        assertThrows(EOFException.class, () -> decode(Arrays.copyOf(update, update.length - 1)));
+
+        // REMOVE的句柄数超过批量上限
+        byte[] remove = {2, 2, (byte) 0xAC, 0x02}; // REMOVE，发送者2，300个句柄
+        assertThrows(StreamCorruptedException.class, () -> decode(remove));
+
+        // 变长整数超过64位
+        byte[] varint = new byte[12];
+        Arrays.fill(varint, (byte) 0xFF);
+        varint[0] = 5; // PING
+        varint[1] = 1;
+        assertThrows(StreamCorruptedException.class, () -> decode(varint));
+    }
+
+    @Test
+    void removeBatchesSplitsAtBatchSize() {
+        int total = ShapeMessage.REMOVE_BATCH_SIZE * 2 + 1;
+        int[] handles = new int[total];
+        for (int i = 0; i < total; i++) {
+            handles[i] = i + 1;
+        }
+        List<ShapeMessage> batches = ShapeMessage.removeBatches(handles, 1);
+        assertEquals(3, batches.size());
+        assertEquals(ShapeMessage.REMOVE_BATCH_SIZE, batches.get(0).getShapeHandles().length);
+        assertEquals(ShapeMessage.REMOVE_BATCH_SIZE, batches.get(1).getShapeHandles().length);
+        assertArrayEquals(new int[]{total}, batches.get(2).getShapeHandles());
+
+        int next = 1;
+        for (ShapeMessage batch : batches) {
+            assertEquals("REMOVE", batch.getAction());
+            for (int handle : batch.getShapeHandles()) {
+                assertEquals(next++, handle);
+            }
+        }
+    }
+
+    @Test
+    void removeBatchesHandlesExactAndEmptyInput() {
+        assertTrue(ShapeMessage.removeBatches(new int[0], 1).isEmpty());
+        assertEquals(1, ShapeMessage.removeBatches(new int[ShapeMessage.REMOVE_BATCH_SIZE], 1).size());
+        assertEquals(2, ShapeMessage.removeBatches(new int[ShapeMessage.REMOVE_BATCH_SIZE + 1], 1).size());
+    }
+
+    @Test
+    void withoutTrailLeavesOriginalIntact() {
+        ShapeMessage message = moveTo(10);
+        ShapeMessage stripped = message.withoutTrail();
+        assertNull(stripped.getTrailDelta());
+        assertEquals(10, stripped.getX());
+        assertNotNull(message.getTrailDelta());
+    }
+}
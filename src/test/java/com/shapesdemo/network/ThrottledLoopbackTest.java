@@ -0,0 +1,258 @@
+package com.shapesdemo.network;
+
+import com.shapesdemo.shape.Circle;
+import com.shapesdemo.shape.Shape;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 在回环连接上运行真实的PacedSender，接收端按固定带宽读取，
+// 检查发送端的细节等级是否随可用带宽变化。每个用例运行数秒，默认不运行（见pom.xml）
+@Tag("slow")
+class ThrottledLoopbackTest {
+    private static final int SHAPES = 20;
+    private static final long MOVE_INTERVAL_MS = 5;
+    private static final long RUN_MS = 4000;
+    private static final long SETTLED_MS = 1500; // 只统计最后这段时间的细节等级，跳过启动和收敛过程
+    // 这段时间内预期等级至少占的比例。发送间隔会周期性地试探着缩短，偶尔短暂切换等级属于正常
+    private static final double SETTLED_SHARE = 0.75;
+    private static final int SOCKET_BUFFER_BYTES = 4096; // 缩小内核缓冲，让限速尽快反映到发送端
+    private static final int VERY_SLOW_BYTES_PER_SECOND = 6 * 1024;
+
+    @Test
+    void unthrottledLinkKeepsFullDetail() throws Exception {
+        Result result = run(0);
+        assertSettledAt(CongestionController.DetailLevel.FULL, result);
+        assertTrue(result.trailUpdates > 0, result::toString);
+        assertEquals(0, result.trailGaps, result::toString);
+    }
+
+    @Test
+    void slowLinkConflatesUpdates() throws Exception {
+        Result result = run(50 * 1024);
+        // 带宽足以承载合并后的消息：拉长间隔、抽稀轨迹，但不降到MINIMAL
+        assertSettledAt(CongestionController.DetailLevel.THINNED, result);
+        assertEquals(0, result.settledCount(CongestionController.DetailLevel.MINIMAL), result::toString);
+        assertTrue(result.delivered < result.produced / 2, result::toString);
+        assertTrue(result.trailUpdates > 0, result::toString);
+        assertEquals(0, result.trailGaps, result::toString);
+    }
+
+    @Test
+    void verySlowLinkFallsToMinimalDetail() throws Exception {
+        Result result = run(VERY_SLOW_BYTES_PER_SECOND);
+        // 合并后仍超出预算：轨迹延后、抽稀发送，但不能中断
+        assertSettledAt(CongestionController.DetailLevel.MINIMAL, result);
+        assertTrue(result.trailUpdates > 0, result::toString);
+        assertEquals(0, result.trailGaps, result::toString);
+    }
+
+    private static void assertSettledAt(CongestionController.DetailLevel expected, Result result) {
+        assertTrue(result.settledSamples > 0, result::toString);
+        assertTrue(result.settledCount(expected) >= result.settledSamples * SETTLED_SHARE,
+                () -> "expected mostly " + expected + ": " + result);
+    }
+
+    // bytesPerSecond为0表示不限速
+    private static Result run(int bytesPerSecond) throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket()) {
+            client.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+            client.connect(new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort()));
+            Socket server = serverSocket.accept();
+            server.setSendBufferSize(SOCKET_BUFFER_BYTES);
+
+            PacedSender sender = new PacedSender(server, 1);
+            DataOutputStream clientOut = new DataOutputStream(client.getOutputStream());
+            CountingInputStream countingIn =
+                    new CountingInputStream(new ThrottledInputStream(client.getInputStream(), bytesPerSecond));
+            DataInputStream clientIn = new DataInputStream(new BufferedInputStream(countingIn));
+            DataInputStream serverIn = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+
+            Result result = new Result(bytesPerSecond);
+            Map<Integer, Integer> trailEnds = new HashMap<>();
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(sender));
+            // 客户端：回应PING，统计收到的UPDATE
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        ShapeMessage message = ShapeMessage.readFrom(clientIn);
+                        if ("PING".equals(message.getAction())) {
+                            ShapeMessage pong = new ShapeMessage(null, "PONG", 2);
+                            pong.setTimestamp(message.getTimestamp());
+                            pong.setReceivedBytes(countingIn.getCount());
+                            pong.writeTo(clientOut);
+                            clientOut.flush();
+                        } else if ("UPDATE".equals(message.getAction())) {
+                            result.delivered++;
+                            if (message.getTrailDelta() != null) {
+                                result.trailUpdates++;
+                                // 测试中轨迹从不清空，代号不变；起点超过已收到的终点即为缺口
+                                int received = trailEnds.getOrDefault(message.getShapeHandle(), 0);
+                                if (message.getTrailBase() > received) {
+                                    result.trailGaps++;
+                                }
+                                trailEnds.put(message.getShapeHandle(), Math.max(received, message.getTrailEnd()));
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // 连接关闭
+                }
+            }));
+            // 服务器读取线程：把PONG交给发送端
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        ShapeMessage message = ShapeMessage.readFrom(serverIn);
+                        if ("PONG".equals(message.getAction())) {
+                            sender.onPong(message, System.currentTimeMillis());
+                        }
+                    }
+                } catch (IOException e) {
+                    // 连接关闭
+                }
+            }));
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            List<Shape> shapes = new ArrayList<>();
+            for (int i = 0; i < SHAPES; i++) {
+                Shape shape = new Circle(i * 30, 0, Color.BLUE, 20);
+                shape.setHandle(i + 1);
+                shape.setShowTrail(true);
+                shapes.add(shape);
+            }
+
+            long end = System.currentTimeMillis() + RUN_MS;
+            long settled = end - SETTLED_MS;
+            int step = 0;
+            while (System.currentTimeMillis() < end) {
+                step++;
+                for (Shape shape : shapes) {
+                    shape.setY((step % 100) * 6);
+                    sender.offer(ShapeMessage.update(shape, 1));
+                    result.produced++;
+                }
+                if (System.currentTimeMillis() >= settled) {
+                    result.settledLevels.merge(sender.getCongestion().getDetailLevel(), 1, Integer::sum);
+                    result.settledSamples++;
+                }
+                Thread.sleep(MOVE_INTERVAL_MS);
+            }
+
+            CongestionController congestion = sender.getCongestion();
+            result.interval = congestion.getSendInterval();
+            result.deliveryRate = congestion.getDeliveryRate();
+            server.close();
+            client.close();
+            for (Thread thread : threads) {
+                thread.join(1000);
+            }
+            return result;
+        }
+    }
+
+    private static class Result {
+        final int bytesPerSecond;
+        volatile int delivered;
+        volatile int trailUpdates;
+        volatile int trailGaps;
+        int produced;
+        final Map<CongestionController.DetailLevel, Integer> settledLevels =
+                new EnumMap<>(CongestionController.DetailLevel.class);
+        int settledSamples;
+        int interval;
+        double deliveryRate;
+
+        Result(int bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        int settledCount(CongestionController.DetailLevel level) {
+            return settledLevels.getOrDefault(level, 0);
+        }
+
+        // 断言失败时输出，便于判断是哪一步没有收敛
+        @Override
+        public String toString() {
+            return String.format("%s: settled levels %s, interval=%d ms, rate=%.1f KB/s, "
+                            + "delivered %d/%d updates, %d with trail, %d gaps",
+                    bytesPerSecond == 0 ? "unthrottled" : bytesPerSecond / 1024 + " KB/s",
+                    settledLevels, interval, deliveryRate * 1000 / 1024,
+                    delivered, produced, trailUpdates, trailGaps);
+        }
+    }
+
+    // 令牌桶限速：按bytesPerSecond累计可读字节数，空闲时最多积攒BURST_BYTES
+    private static class ThrottledInputStream extends FilterInputStream {
+        private static final int BURST_BYTES = 1024;
+
+        private final int bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long consumed;
+
+        ThrottledInputStream(InputStream in, int bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (bytesPerSecond > 0) {
+                len = Math.min(len, awaitBudget());
+            }
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                consumed += n;
+            }
+            return n;
+        }
+
+        private int awaitBudget() throws IOException {
+            while (true) {
+                long allowed = (System.nanoTime() - start) * bytesPerSecond / 1_000_000_000L;
+                consumed = Math.max(consumed, allowed - BURST_BYTES);
+                if (allowed > consumed) {
+                    return (int) (allowed - consumed);
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+}
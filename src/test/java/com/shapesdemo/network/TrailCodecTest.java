@@ -0,0 +1,103 @@
+package com.shapesdemo.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrailCodecTest {
+    @Test
+    void roundTripsSmallDeltasInOneBytePerCoordinate() {
+        List<Point> points = Arrays.asList(new Point(3, 4), new Point(8, 1), new Point(2, -5));
+        byte[] encoded = TrailCodec.encode(points);
+        assertEquals(1 + points.size() * 2, encoded.length);
+        assertEquals(points, TrailCodec.decode(encoded));
+    }
+
+    @Test
+    void roundTripsEmptyTrail() {
+        byte[] encoded = TrailCodec.encode(Collections.emptyList());
+        assertEquals(1, encoded.length);
+        assertEquals(Collections.emptyList(), TrailCodec.decode(encoded));
+    }
+
+    @Test
+    void roundTripsNegativeAndExtremeCoordinates() {
+        List<Point> points = Arrays.asList(
+                new Point(-1, 1),
+                new Point(-64, 63),
+                new Point(Integer.MAX_VALUE, Integer.MIN_VALUE),
+                new Point(Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new Point(0, 0));
+        assertEquals(points, TrailCodec.decode(TrailCodec.encode(points)));
+    }
+
+    @Test
+    void zigZagKeepsSmallNegativeDeltasShort() {
+        // -64和63经zig-zag后为127和126，仍然只需要一个字节
+        byte[] encoded = TrailCodec.encode(Arrays.asList(new Point(-64, 63)));
+        assertEquals(3, encoded.length);
+        byte[] longer = TrailCodec.encode(Arrays.asList(new Point(-65, 64)));
+        assertEquals(5, longer.length);
+    }
+
+    @Test
+    void roundTripsLongTrail() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new Point(i * 7 % 800, (int) (Math.sin(i / 10.0) * 300)));
+        }
+        assertEquals(points, TrailCodec.decode(TrailCodec.encode(points)));
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] encoded = TrailCodec.encode(Arrays.asList(new Point(1000, 1000), new Point(5, 5)));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+        IllegalArgumentException e =
+                assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(truncated));
+        assertEquals("malformed varint", e.getMessage());
+    }
+
+    @Test
+    void rejectsUnterminatedVarint() {
+        assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(new byte[]{(byte) 0x80}));
+    }
+
+    @Test
+    void rejectsVarintLongerThanFiveBytes() {
+        byte[] data = {1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0, 0};
+        assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(data));
+    }
+
+    @Test
+    void rejectsCountLargerThanData() {
+        // 点数为Integer.MAX_VALUE，按此分配会耗尽内存
+        byte[] data = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        IllegalArgumentException e =
+                assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(data));
+        assertEquals("malformed varint", e.getMessage());
+
+        byte[] shortByOne = Arrays.copyOf(TrailCodec.encode(Arrays.asList(new Point(1, 1), new Point(2, 2))), 4);
+        assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(shortByOne));
+    }
+
+    @Test
+    void rejectsNegativeCount() {
+        byte[] data = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        IllegalArgumentException e =
+                assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(data));
+        assertEquals("malformed varint", e.getMessage());
+    }
+
+    @Test
+    void rejectsEmptyInput() {
+        assertThrows(IllegalArgumentException.class, () -> TrailCodec.decode(new byte[0]));
+    }
+}
@@ -0,0 +1,141 @@
+package com.shapesdemo.shape;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShapeTrailTest {
+    private Shape shape;
+
+    @BeforeEach
+    void setUp() {
+        shape = new Circle(0, 0, Color.RED, 20);
+        shape.setShowTrail(true); // 记录轨迹点(0, 0)
+    }
+
+    @Test
+    void withoutToleranceEveryPointIsKept() {
+        for (int x = 10; x <= 100; x += 10) {
+            shape.setX(x);
+        }
+        assertEquals(11, shape.getTrailCount());
+    }
+
+    @Test
+    void pointsCloserThanMinimumDistanceAreSkipped() {
+        shape.setX(3);
+        shape.setX(4);
+        assertEquals(1, shape.getTrailCount());
+        shape.setX(6);
+        assertEquals(2, shape.getTrailCount());
+    }
+
+    @Test
+    void collinearPointsStayPending() {
+        shape.setTrailTolerance(2);
+        for (int x = 10; x <= 100; x += 10) {
+            shape.setX(x);
+        }
+        assertEquals(1, shape.getTrailCount());
+
+        // 拐弯后，直线的终点被确定下来
+        shape.setY(50);
+        assertEquals(2, shape.getTrailCount());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(100, 0)), shape.getTrailPointsSince(0));
+    }
+
+    @Test
+    void wobbleWithinToleranceIsDropped() {
+        shape.setTrailTolerance(3);
+        for (int i = 1; i <= 20; i++) {
+            shape.setPosition(i * 10, 0);
+            shape.setY(i % 2 == 0 ? 0 : 2);
+        }
+        assertEquals(1, shape.getTrailCount());
+    }
+
+    @Test
+    void pendingPointsAreBounded() {
+        shape.setTrailTolerance(2);
+        for (int i = 1; i < Shape.MAX_PENDING_TRAIL_POINTS; i++) {
+            shape.setX(i * 10);
+        }
+        assertEquals(1, shape.getTrailCount());
+        shape.setX(Shape.MAX_PENDING_TRAIL_POINTS * 10);
+        assertEquals(2, shape.getTrailCount());
+    }
+
+    @Test
+    void clearStartsANewGeneration() {
+        shape.setX(10);
+        int generation = shape.getTrailGeneration();
+        shape.clearTrail();
+        assertEquals(generation + 1, shape.getTrailGeneration());
+        assertEquals(1, shape.getTrailCount());
+        assertEquals(0, shape.getSyncedTrailCount());
+        assertEquals(Arrays.asList(new Point(10, 0)), shape.getTrailPointsSince(0));
+    }
+
+    @Test
+    void appendSkipsPointsAlreadyReceived() {
+        Shape remote = new Circle(0, 0, Color.RED, 20);
+        remote.appendTrailPoints(0, 0, 2, Arrays.asList(new Point(0, 0), new Point(10, 0)));
+        remote.appendTrailPoints(0, 1, 3, Arrays.asList(new Point(10, 0), new Point(20, 0)));
+        assertEquals(3, remote.getTrailCount());
+        assertEquals(3, remote.getSyncedTrailCount());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(10, 0), new Point(20, 0)),
+                remote.getTrailPointsSince(0));
+    }
+
+    @Test
+    void appendAfterAGapRestartsFromSenderCount() {
+        Shape remote = new Circle(0, 0, Color.RED, 20);
+        remote.appendTrailPoints(0, 0, 1, Arrays.asList(new Point(0, 0)));
+        remote.appendTrailPoints(0, 5, 6, Arrays.asList(new Point(50, 0)));
+        assertEquals(6, remote.getTrailCount());
+        assertEquals(Arrays.asList(new Point(50, 0)), remote.getTrailPointsSince(0));
+    }
+
+    @Test
+    void appendFromNewGenerationResetsEvenWhenCountsOverlap() {
+        Shape remote = new Circle(0, 0, Color.RED, 20);
+        remote.appendTrailPoints(0, 0, 4, Arrays.asList(
+                new Point(0, 0), new Point(10, 0), new Point(20, 0), new Point(30, 0)));
+
+        // 发送方清除后又产生了新的点，新序号落在接收方已有范围内
+        remote.appendTrailPoints(1, 2, 4, Arrays.asList(new Point(0, 50), new Point(0, 60)));
+        assertEquals(1, remote.getTrailGeneration());
+        assertEquals(4, remote.getTrailCount());
+        assertEquals(Arrays.asList(new Point(0, 50), new Point(0, 60)), remote.getTrailPointsSince(0));
+    }
+
+    @Test
+    void thinnedAppendAdvancesToRangeEndWithoutGap() {
+        Shape remote = new Circle(0, 0, Color.RED, 20);
+        remote.appendTrailPoints(0, 0, 2, Arrays.asList(new Point(0, 0), new Point(10, 0)));
+        // 序号2到9被稀疏为两个点
+        remote.appendTrailPoints(0, 2, 10, Arrays.asList(new Point(50, 0), new Point(90, 0)));
+        assertEquals(10, remote.getTrailCount());
+        assertEquals(10, remote.getSyncedTrailCount());
+
+        // 之后的增量从序号10继续，不会被当作缺口而重置
+        remote.appendTrailPoints(0, 10, 11, Arrays.asList(new Point(100, 0)));
+        assertEquals(11, remote.getTrailCount());
+        assertEquals(Arrays.asList(new Point(0, 0), new Point(10, 0), new Point(50, 0), new Point(90, 0),
+                new Point(100, 0)), remote.getTrailPointsSince(0));
+    }
+
+    @Test
+    void duplicateRangeIsIgnored() {
+        Shape remote = new Circle(0, 0, Color.RED, 20);
+        remote.appendTrailPoints(0, 0, 2, Arrays.asList(new Point(0, 0), new Point(10, 0)));
+        remote.appendTrailPoints(0, 0, 2, Arrays.asList(new Point(0, 0), new Point(10, 0)));
+        assertEquals(2, remote.getTrailCount());
+        assertEquals(2, remote.getTrailPointsSince(0).size());
+    }
+}
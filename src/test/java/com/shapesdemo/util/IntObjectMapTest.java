@@ -0,0 +1,154 @@
+package com.shapesdemo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectMapTest {
+    @Test
+    void keyZeroIsReserved() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "zero"));
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void putReplacesAndReturnsPreviousValue() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removeFromCollidingChainKeepsLaterKeysReachable() {
+        // 默认容量32，找出理想位置相同的一组键，加上落在紧邻位置的键，构成一条较长的探测链
+        List<int[]> chain = collidingKeys(32, 6);
+        int[] keys = chain.get(0);
+        int[] neighbours = chain.get(1);
+        for (int removed = 0; removed < keys.length; removed++) {
+            IntObjectMap<Integer> map = new IntObjectMap<>();
+            for (int k : keys) {
+                map.put(k, k);
+            }
+            for (int k : neighbours) {
+                map.put(k, k);
+            }
+            assertEquals(keys[removed], map.remove(keys[removed]));
+            for (int k : keys) {
+                assertEquals(k == keys[removed] ? null : Integer.valueOf(k), map.get(k));
+            }
+            for (int k : neighbours) {
+                assertEquals(k, map.get(k));
+            }
+        }
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(42);
+        IntObjectMap<Integer> map = new IntObjectMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int op = 0; op < 200_000; op++) {
+            // 键集中在较小范围内（含负数），频繁命中已有键和冲突链；偶尔出现极端值
+            int key = random.nextInt(10) == 0
+                    ? random.nextInt()
+                    : random.nextInt(2001) - 1000;
+            if (key == 0) {
+                continue;
+            }
+            int action = random.nextInt(10);
+            if (action < 5) {
+                assertEquals(expected.put(key, op), map.put(key, op));
+            } else if (action < 8) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertKeys(expected, map);
+    }
+
+    @Test
+    void growsAndShrinksThroughResize() {
+        IntObjectMap<Integer> map = new IntObjectMap<>(2);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 1; i <= 10_000; i++) {
+            int key = i % 2 == 0 ? i : -i;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(10_000, map.size());
+        assertKeys(expected, map);
+        for (int i = 1; i <= 10_000; i += 3) {
+            int key = i % 2 == 0 ? i : -i;
+            assertEquals(expected.remove(key), map.remove(key));
+        }
+        assertKeys(expected, map);
+        for (int key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(1, "a");
+        map.put(-1, "b");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertEquals(0, map.keys().length);
+        map.put(1, "c");
+        assertEquals("c", map.get(1));
+    }
+
+    private static void assertKeys(Map<Integer, Integer> expected, IntObjectMap<Integer> map) {
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        int[] expectedKeys = expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        assertArrayEquals(expectedKeys, keys);
+    }
+
+    // 返回两组键（正负都有）：count个理想位置相同的键，以及count个理想位置紧随其后的键
+    private static List<int[]> collidingKeys(int capacity, int count) {
+        int mask = capacity - 1;
+        int home = IntObjectMap.mix(1) & mask;
+        int[] same = new int[count];
+        int[] next = new int[count];
+        int s = 0;
+        int n = 0;
+        for (int k = 1; s < count || n < count; k++) {
+            for (int key : new int[]{k, -k}) {
+                int slot = IntObjectMap.mix(key) & mask;
+                if (slot == home && s < count) {
+                    same[s++] = key;
+                } else if (slot == ((home + 1) & mask) && n < count) {
+                    next[n++] = key;
+                }
+            }
+        }
+        List<int[]> result = new ArrayList<>();
+        result.add(same);
+        result.add(next);
+        return result;
+    }
+}